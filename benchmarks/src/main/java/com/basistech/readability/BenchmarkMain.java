@@ -0,0 +1,38 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks named on the command line, or all of them, with the usual JMH options. The GC
+ * profiler is always on, so that allocation per operation comes out next to the times.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+        //
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
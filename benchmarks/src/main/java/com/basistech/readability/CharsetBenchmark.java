@@ -0,0 +1,86 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Charset detection on the raw bytes of a page, with the layered detector and with Tika alone. The pages
+ * with the charset meta tag taken out show what the layered detector costs when it has to fall back to
+ * looking at the bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CharsetBenchmark {
+    private static final Pattern CHARSET_META = Pattern.compile("<meta[^>]*charset[^>]*>",
+                                                                Pattern.CASE_INSENSITIVE);
+
+    @Param({"news-1.html", "news-latin1.html", "blog-1.html"})
+    private String page;
+
+    private byte[] declared;
+    private byte[] undeclared;
+    private LayeredCharsetDetector layered;
+    private TikaCharsetDetector tika;
+
+    @Setup
+    public void setUp() throws Exception {
+        Corpus.Page content = Corpus.get().getPage(page);
+        declared = content.getBytes();
+        undeclared = CHARSET_META.matcher(content.getText()).replaceAll("").getBytes(content.getCharset());
+        layered = new LayeredCharsetDetector();
+        tika = new TikaCharsetDetector();
+    }
+
+    @Benchmark
+    public String layeredDeclared() {
+        return layered.detect(declared, null);
+    }
+
+    @Benchmark
+    public String layeredUndeclared() {
+        return layered.detect(undeclared, null);
+    }
+
+    @Benchmark
+    public String tikaDeclared() {
+        return tika.detect(declared, null);
+    }
+
+    @Benchmark
+    public String tikaUndeclared() {
+        return tika.detect(undeclared, null);
+    }
+}
@@ -0,0 +1,171 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The sample pages the benchmarks run on, from the corpus directory next to this class. corpus.txt lists
+ * them, one to a line, with the kind of page, its encoding and the url it pretends to come from.
+ * <p>
+ * The pages are made up: the text is random words, but the markup follows the shapes of real sites (a news
+ * story among navigation and comments, a blog post, a forum thread of br-separated posts, an article split
+ * over five pages, a page that is mostly one big table, and a page that is mostly script).
+ */
+final class Corpus {
+    private static final String DIRECTORY = "corpus/";
+    private static Corpus instance;
+
+    private final List<Page> pages;
+    private final Map<String, Page> byName;
+    private final Map<String, Page> byUrl;
+
+    /**
+     * One page of the corpus.
+     */
+    static final class Page {
+        private final String name;
+        private final String kind;
+        private final String charset;
+        private final String url;
+        private final byte[] bytes;
+        private final String text;
+
+        Page(String name, String kind, String charset, String url, byte[] bytes) throws IOException {
+            this.name = name;
+            this.kind = kind;
+            this.charset = charset;
+            this.url = url;
+            this.bytes = bytes;
+            this.text = new String(bytes, charset);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        String getCharset() {
+            return charset;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        byte[] getBytes() {
+            return bytes.clone();
+        }
+
+        String getText() {
+            return text;
+        }
+    }
+
+    private Corpus(List<Page> pages) {
+        this.pages = Collections.unmodifiableList(pages);
+        byName = new HashMap<String, Page>();
+        byUrl = new HashMap<String, Page>();
+        for (Page page : pages) {
+            byName.put(page.getName(), page);
+            byUrl.put(page.getUrl(), page);
+        }
+    }
+
+    static synchronized Corpus get() throws IOException {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    private static Corpus load() throws IOException {
+        List<Page> pages = new ArrayList<Page>();
+        String index = new String(read("corpus.txt"), "UTF-8");
+        for (String line : index.split("\n")) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 4) {
+                throw new IOException("Bad corpus entry: " + line);
+            }
+            pages.add(new Page(fields[0], fields[1], fields[2], fields[3], read(fields[0])));
+        }
+        return new Corpus(pages);
+    }
+
+    private static byte[] read(String name) throws IOException {
+        InputStream input = Corpus.class.getResourceAsStream(DIRECTORY + name);
+        if (input == null) {
+            throw new IOException("No corpus file " + name);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IOUtils.copy(input, bytes);
+            return bytes.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    List<Page> getPages() {
+        return pages;
+    }
+
+    Page getPage(String name) {
+        Page page = byName.get(name);
+        if (page == null) {
+            throw new IllegalArgumentException("No page " + name + " in the corpus");
+        }
+        return page;
+    }
+
+    /**
+     * @return a page reader that serves the corpus by url, so that next-page links can be followed without
+     *         a network.
+     */
+    PageReader getPageReader() {
+        return new PageReader() {
+            public String readPage(String url) throws PageReadException {
+                Page page = byUrl.get(url);
+                if (page == null) {
+                    throw new PageReadException("No page in the corpus for " + url);
+                }
+                return page.getText();
+            }
+
+            public void setCharsetDetector(PageCharsetDetector detector) {
+                //
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The two ways of getting a DOM from a page: the jsoup parser that processDocument uses, and NekoHTML feeding
+ * a jsoup tree.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"news-1.html", "blog-1.html", "forum-1.html", "paginated-1.html", "huge-table.html",
+            "script-heavy-1.html"})
+    private String page;
+
+    private Corpus.Page content;
+    private NekoJsoupParser nekoParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        content = Corpus.get().getPage(page);
+        nekoParser = new NekoJsoupParser();
+    }
+
+    @Benchmark
+    public Document jsoupParse() {
+        return Jsoup.parse(content.getText(), content.getUrl());
+    }
+
+    @Benchmark
+    public Document nekoParse() throws Exception {
+        return nekoParser.parse(content.getText(), content.getUrl());
+    }
+}
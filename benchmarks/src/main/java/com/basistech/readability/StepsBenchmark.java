@@ -0,0 +1,152 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The steps of processDocument one at a time: getting the parsed page ready, grabbing the article, cleaning
+ * up the article, and turning the result into text. Each step changes the document it works on, so the
+ * steps before it run again, untimed, before every call. JMH warns against setup at the invocation level for
+ * calls that take microseconds; these take a millisecond or more, so the cost of the setup does not swamp
+ * the step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StepsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PageState {
+        @Param({"news-1.html", "blog-1.html", "forum-1.html", "paginated-1.html", "huge-table.html",
+                "script-heavy-1.html"})
+        private String page;
+
+        private Corpus.Page content;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            content = Corpus.get().getPage(page);
+        }
+
+        Document parse() {
+            return Jsoup.parse(content.getText(), content.getUrl());
+        }
+    }
+
+    /**
+     * A page just as the parser left it.
+     */
+    @State(Scope.Thread)
+    public static class ParsedState {
+        private Readability readability;
+        private Document document;
+
+        @Setup(Level.Invocation)
+        public void setUp(PageState page) {
+            readability = new Readability();
+            document = page.parse();
+        }
+    }
+
+    /**
+     * A page that has been through prepare, ready for grabArticle.
+     */
+    @State(Scope.Thread)
+    public static class PreparedState {
+        private Readability readability;
+
+        @Setup(Level.Invocation)
+        public void setUp(PageState page) {
+            readability = new Readability();
+            readability.prepare(page.parse());
+        }
+    }
+
+    /**
+     * The article content of a page, collected but not yet cleaned up.
+     */
+    @State(Scope.Thread)
+    public static class CollectedState {
+        private ArticleGrabber grabber;
+        private Element content;
+
+        @Setup(Level.Invocation)
+        public void setUp(PageState page) {
+            Document document = new Readability().prepare(page.parse());
+            grabber = new ArticleGrabber(document, document.body(), false, true, true, true);
+            content = grabber.collectContent();
+        }
+    }
+
+    /**
+     * A page with only the article left in it. Turning it into text does not change it, so one will do.
+     */
+    @State(Scope.Thread)
+    public static class ExtractedState {
+        private Document document;
+
+        @Setup(Level.Trial)
+        public void setUp(PageState page) throws Exception {
+            Readability readability = new Readability();
+            document = readability.prepare(page.parse());
+            readability.grabArticle(null);
+        }
+    }
+
+    @Benchmark
+    public Document prepare(ParsedState state) {
+        return state.readability.prepare(state.document);
+    }
+
+    @Benchmark
+    public Element grabArticle(PreparedState state) throws Exception {
+        return state.readability.grabArticle(null);
+    }
+
+    @Benchmark
+    public Element prepArticle(CollectedState state) {
+        state.grabber.prepArticle(state.content);
+        return state.content;
+    }
+
+    @Benchmark
+    public String htmlPageProcess(ExtractedState state) {
+        HtmlPage htmlPage = new HtmlPage();
+        htmlPage.process(state.document);
+        return htmlPage.getPcData();
+    }
+}
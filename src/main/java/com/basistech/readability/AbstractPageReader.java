@@ -17,53 +17,110 @@
  */
 package com.basistech.readability;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class AbstractPageReader {
     static final Logger LOG = LoggerFactory.getLogger(HttpPageReader.class);
     static final Charset UTF8 = Charset.forName("utf-8");
+    static final int DETECTION_PREFIX = 64 * 1024;
 
     private PageCharsetDetector charsetDetector;
-    private Charset charset;
-    private boolean serverReturnedEncoding;
+    private volatile Charset charset;
+    private volatile boolean serverReturnedEncoding;
     private boolean respectServerEncoding;
-    private String detectedEncoding;
+    private volatile String detectedEncoding;
+    private ReadabilityMetrics metrics = NoOpReadabilityMetrics.INSTANCE;
 
+    /*
+     * Everything about one page is kept in locals; the fields just remember the last page for the getters.
+     * That way one reader can be used by several threads at once.
+     */
     protected String readContent(InputStream response, String forceEncoding) throws IOException {
-        byte[] bytes = IOUtils.toByteArray(response);
-        charset = null;
+        return readContent(response, forceEncoding, -1);
+    }
+
+    /**
+     * The charset detector is given all of the content.
+     *
+     * @param expectedLength the length of the content, if known, so that it can be read straight into an array
+     *            of the right size; otherwise -1.
+     */
+    protected String readContent(InputStream response, String forceEncoding, long expectedLength)
+        throws IOException {
+        byte[] bytes = PageDecoder.readBytes(response, expectedLength);
+        return new String(bytes, chooseCharset(bytes, forceEncoding));
+    }
+
+    /*
+     * For buffer readers: the charset is chosen from no more than the first DETECTION_PREFIX bytes, as for
+     * streams, and the content is decoded straight from the buffer.
+     */
+    protected String readContent(ByteBuffer data, String forceEncoding) {
+        byte[] prefix = new byte[Math.min(data.remaining(), DETECTION_PREFIX)];
+        data.duplicate().get(prefix);
+        return PageDecoder.decode(data, chooseCharset(prefix, forceEncoding));
+    }
+
+    /*
+     * For stream readers: look at no more than the first DETECTION_PREFIX bytes to pick the charset, then hand
+     * over a stream that starts from the beginning again.
+     */
+    protected PageStream openContent(InputStream response, String forceEncoding, long contentLength)
+        throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(response, DETECTION_PREFIX);
+        buffered.mark(DETECTION_PREFIX);
+        byte[] prefix = new byte[DETECTION_PREFIX];
+        int length = 0;
+        int count;
+        while (length < prefix.length && (count = buffered.read(prefix, length, prefix.length - length)) != -1) {
+            length += count;
+        }
+        buffered.reset();
+        if (length < prefix.length) {
+            prefix = Arrays.copyOf(prefix, length);
+        }
+        return new PageStream(buffered, chooseCharset(prefix, forceEncoding), contentLength);
+    }
+
+    Charset chooseCharset(byte[] bytes, String forceEncoding) {
+        Charset pageCharset = null;
         String hint = null;
         if (forceEncoding != null) {
             serverReturnedEncoding = true;
             try {
-                charset = Charset.forName(forceEncoding);
-                hint = charset.name();
+                pageCharset = Charset.forName(forceEncoding);
+                hint = pageCharset.name();
             } catch (Exception e) {
                 //
             }
         }
-        if (charsetDetector != null && !respectServerEncoding || charset == null) {
+        if (charsetDetector != null && !respectServerEncoding || pageCharset == null) {
+            long start = System.nanoTime();
             String charsetName = charsetDetector.detect(bytes, hint);
+            metrics.recordTime(ReadabilityMetrics.Stage.CHARSET_DETECTION, System.nanoTime() - start);
             if (charsetName != null) {
                 try {
-                    charset = Charset.forName(charsetName);
-                    detectedEncoding = charset.name();
+                    pageCharset = Charset.forName(charsetName);
+                    detectedEncoding = pageCharset.name();
                 } catch (Exception e) {
                     LOG.warn("Detected character set " + charsetName + " not supported");
                 }
             }
         }
-        if (charset == null) {
+        if (pageCharset == null) {
             LOG.warn("Defaulting to utf-8");
-            charset = UTF8;
+            pageCharset = UTF8;
         }
-        return new String(bytes, charset);
+        charset = pageCharset;
+        return pageCharset;
     }
 
     public PageCharsetDetector getCharsetDetector() {
@@ -94,4 +151,16 @@ public class AbstractPageReader {
         return detectedEncoding;
     }
 
+    /**
+     * @param metrics where to report the time taken to detect the charset of each page; null for nowhere,
+     *            the default.
+     */
+    public void setMetrics(ReadabilityMetrics metrics) {
+        this.metrics = metrics == null ? NoOpReadabilityMetrics.INSTANCE : metrics;
+    }
+
+    public ReadabilityMetrics getMetrics() {
+        return metrics;
+    }
+
 }
@@ -0,0 +1,736 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One pass of the grabArticle algorithm over one document, with one setting of the flags that control how
+ * aggressively it throws things away. {@link Readability} runs passes with fewer and fewer of the flags set
+ * until one of them comes up with enough text. A pass owns the content scores and subtree statistics for its
+ * document, so passes over different copies of a page can run at the same time.
+ */
+final class ArticleGrabber {
+    /**
+     * A pass that finds less text than this has failed, and the next setting of the flags gets a try.
+     */
+    static final int MIN_ARTICLE_LENGTH = 250;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArticleGrabber.class);
+    private static final Set<String> DIV_TO_P_ELEMENTS;
+    static {
+        DIV_TO_P_ELEMENTS = new HashSet<String>();
+        DIV_TO_P_ELEMENTS.add("a");
+        DIV_TO_P_ELEMENTS.add("blockquote");
+        DIV_TO_P_ELEMENTS.add("dl");
+        DIV_TO_P_ELEMENTS.add("div");
+        DIV_TO_P_ELEMENTS.add("img");
+        DIV_TO_P_ELEMENTS.add("ol");
+        DIV_TO_P_ELEMENTS.add("p");
+        DIV_TO_P_ELEMENTS.add("pre");
+        DIV_TO_P_ELEMENTS.add("table");
+        DIV_TO_P_ELEMENTS.add("ul");
+    }
+
+    private final Document document;
+    private final Element pageElement;
+    private final boolean isPaging;
+    private final boolean stripUnlikelyCandidates;
+    private final boolean classWeight;
+    private final boolean cleanConditionally;
+    private final ScoreTable scores;
+    private final SubtreeStats stats;
+    private Element articleContent;
+    private ReadabilityMetrics metrics = NoOpReadabilityMetrics.INSTANCE;
+    private int elementCount;
+    private CarriedScores inheritedScores;
+    private CarriedScores passedOnScores;
+
+    ArticleGrabber(Document document, Element pageElement, boolean isPaging, boolean stripUnlikelyCandidates,
+                   boolean classWeight, boolean cleanConditionally) {
+        this.document = document;
+        this.pageElement = pageElement;
+        this.isPaging = isPaging;
+        this.stripUnlikelyCandidates = stripUnlikelyCandidates;
+        this.classWeight = classWeight;
+        this.cleanConditionally = cleanConditionally;
+        scores = new ScoreTable();
+        stats = new SubtreeStats();
+    }
+
+    /**
+     * Run one pass of the algorithm over the page, leaving the article content as the only thing in the
+     * body.
+     *
+     * @return the article content.
+     */
+    Element grab() {
+        Element content = collectContent();
+
+        /**
+         * So we have all of the content that we need. Now we clean it up for presentation.
+         **/
+        long start = System.nanoTime();
+        prepArticle(content);
+        metrics.recordTime(ReadabilityMetrics.Stage.PREP_ARTICLE, System.nanoTime() - start);
+
+        this.articleContent = content;
+        return content;
+    }
+
+    /**
+     * Score the page, pick the top candidate and gather it and its siblings into the article content, which
+     * is left as the only thing in the body. This is grab without the final clean up.
+     *
+     * @return the article content.
+     */
+    // CHECKSTYLE:OFF
+    Element collectContent() {
+        Elements allElements = pageElement.getAllElements();
+        elementCount = allElements.size();
+        /*
+         * Note: in Javascript, this list would be *live*. If you deleted a node from the tree, it and its
+         * children would remove themselves. To get the same effect, we make a linked list and we remove
+         * things from it. This won't win prizes for speed, but, then again, the code in Javascript has to be
+         * doing something nearly as awful.
+         */
+        LinkedList<Element> allElementsList = new LinkedList<Element>();
+        allElementsList.addAll(allElements);
+
+        /**
+         * First, node prepping. Trash nodes that look cruddy (like ones with the class name "comment", etc),
+         * and turn divs into P tags where they have been used inappropriately (as in, where they contain no
+         * other block level elements.) Note: Assignment from index for performance. See
+         * http://www.peachpit.com/articles/article.aspx?p=31567&seqNum=5 TODO: Shouldn't this be a reverse
+         * traversal?
+         **/
+        List<Element> nodesToScore = new ArrayList<Element>();
+        ListIterator<Element> elIterator = allElementsList.listIterator();
+        Set<Element> goodAsDead = new HashSet<Element>();
+        while (elIterator.hasNext()) {
+            Element node = elIterator.next();
+            if (goodAsDead.contains(node)) {
+                continue;
+            }
+
+            /* Remove unlikely candidates */
+            if (stripUnlikelyCandidates) {
+                String unlikelyMatchString = node.className() + node.id();
+                int matched = Patterns.classify(unlikelyMatchString);
+                if ((matched & Patterns.UNLIKELY_CANDIDATES_BIT) != 0
+                    && (matched & Patterns.OK_MAYBE_ITS_A_CANDIDATE_BIT) == 0
+                    && !"body".equals(node.tagName())) {
+                    LOG.debug("Removing unlikely candidate - " + unlikelyMatchString);
+                    List<Element> toRemoveAndBelow = node.getAllElements();
+                    elIterator.remove();
+                    /*
+                     * adding 'node' to that set is harmless and reduces the code complexity here.
+                     */
+                    goodAsDead.addAll(toRemoveAndBelow);
+                    continue;
+                }
+            }
+
+            if ("p".equals(node.tagName()) || "td".equals(node.tagName()) || "pre".equals(node.tagName())) {
+                nodesToScore.add(node);
+            }
+
+            /*
+             * Turn all divs that don't have children block level elements into p's
+             */
+            if ("div".equals(node.tagName())) {
+                boolean hasBlock = false;
+                for (Element divChild : node.getAllElements()) {
+                    if (divChild != node) {
+                        if (DIV_TO_P_ELEMENTS.contains(divChild.tagName())) {
+                            hasBlock = true;
+                            break;
+                        }
+                    }
+                }
+                if (!hasBlock) {
+                    Element newElement = changeElementTag(node, "p");
+                    nodesToScore.remove(node);
+                    nodesToScore.add(newElement);
+                } else {
+
+                    /* EXPERIMENTAL *//*
+                                       * grab just child text and wrap each chunk in a p
+                                       */
+                    int limit = node.childNodes().size();
+                    for (int i = 0; i < limit; i++) {
+                        Node childNode = node.childNodes().get(i);
+                        if (childNode instanceof TextNode) {
+                            Element p = document.createElement("p");
+                            p.attr("basisInline", "true");
+                            String text = ((TextNode)childNode).text();
+                            if (text.indexOf('<') == -1 && text.indexOf('&') == -1) {
+                                // nothing for the parser to do but make a text node of it.
+                                if (text.length() > 0) {
+                                    p.appendText(text);
+                                }
+                            } else {
+                                p.html(text);
+                            }
+                            childNode.replaceWith(p);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Loop through all paragraphs, and assign a score to them based on how content-y they look. Then add
+         * their score to their parent node. A score is determined by things like number of commas, class
+         * names, etc. Maybe eventually link density.
+         **/
+        if (inheritedScores != null) {
+            inheritedScores.applyTo(scores, pageElement);
+        }
+        List<Element> candidates = new ArrayList<Element>();
+        for (Element nodeToScore : nodesToScore) {
+            Element parentNode = nodeToScore.parent();
+            if (null == parentNode) { // might be an orphan whose parent was
+                // dropped previously.
+                continue;
+            }
+            Element grandParentNode = parentNode.parent();
+            if (grandParentNode == null) {
+                continue; // ditto
+            }
+            int innerTextLength = stats.textLength(nodeToScore);
+
+            /*
+             * If this paragraph is less than 25 characters, don't even count it.
+             */
+            if (innerTextLength < 25) {
+                continue;
+            }
+
+            /* Initialize readability data for the parent. */
+            if (!scores.isInitialized(parentNode)) {
+                initializeNode(parentNode);
+                candidates.add(parentNode);
+            }
+
+            /* Initialize readability data for the grandparent. */
+            /*
+             * If the grandparent has no parent, we don't want it as a candidate. It's probably a symptom that
+             * we're operating in an orphan.
+             */
+            if (grandParentNode.parent() != null && !scores.isInitialized(grandParentNode)) {
+                initializeNode(grandParentNode);
+                candidates.add(grandParentNode);
+            }
+
+            double contentScore = 0;
+
+            /* Add a point for the paragraph itself as a base. */
+            contentScore++;
+
+            /* Add points for any commas within this paragraph */
+            contentScore += stats.commaSegments(nodeToScore);
+
+            /*
+             * For every 100 characters in this paragraph, add another point. Up to 3 points.
+             */
+            contentScore += Math.min(Math.floor(innerTextLength / 100.0), 3.0);
+
+            /* Add the score to the parent. The grandparent gets half. */
+            incrementContentScore(parentNode, contentScore);
+
+            if (grandParentNode != null) {
+                incrementContentScore(grandParentNode, contentScore / 2.0);
+            }
+        }
+
+        /**
+         * After we've calculated scores, loop through all of the possible candidate nodes we found and find
+         * the one with the highest score.
+         **/
+        Element topCandidate = null;
+        for (Element candidate : candidates) {
+            /**
+             * Scale the final candidates score based on link density. Good content should have a relatively
+             * small link density (5% or less) and be mostly unaffected by this operation.
+             **/
+            double score = getContentScore(candidate);
+            double newScore = score * (1.0 - getLinkDensity(candidate));
+            setContentScore(candidate, newScore);
+            LOG.debug("Candidate [" + candidate.getClass() + "] (" + candidate.className() + ":"
+                      + candidate.id() + ") with score " + newScore);
+
+            if (null == topCandidate || newScore > getContentScore(topCandidate)) {
+                topCandidate = candidate;
+            }
+        }
+        if (passedOnScores != null) {
+            passedOnScores.capture(scores, pageElement);
+        }
+
+        /**
+         * If we still have no top candidate, just use the body as a last resort. We also have to copy the
+         * body node so it is something we can modify.
+         **/
+        if (topCandidate == null || topCandidate == pageElement) {
+            topCandidate = document.createElement("div");
+            RoundTrip.copyContent(pageElement, topCandidate);
+            stats.invalidate(pageElement);
+            pageElement.empty();
+            pageElement.appendChild(topCandidate);
+            initializeNode(topCandidate);
+        }
+
+        /**
+         * Now that we have the top candidate, look through its siblings for content that might also be
+         * related. Things like preambles, content split by ads that we removed, etc.
+         **/
+        Element articleContent = document.createElement("div");
+        if (isPaging) {
+            articleContent.attr("id", "readability-content");
+        }
+        double siblingScoreThreshold = Math.max(10, getContentScore(topCandidate) * 0.2);
+        List<Element> siblingNodes = topCandidate.parent().children();
+
+        for (Element siblingNode : siblingNodes) {
+            boolean scored = isElementScored(siblingNode);
+
+            boolean append = false;
+
+            LOG.debug("Looking at sibling node: [" + siblingNode.getClass() + "] (" + siblingNode.className()
+                      + ":" + siblingNode.id() + ")");
+            if (scored) {
+                LOG.debug("Sibling has score " + getContentScore(siblingNode));
+            } else {
+                LOG.debug("Sibling has score unknown");
+            }
+
+            if (siblingNode == topCandidate) {
+                append = true;
+            }
+
+            double contentBonus = 0;
+            /*
+             * Give a bonus if sibling nodes and top candidates have the example same classname
+             */
+            if (siblingNode.className().equals(topCandidate.className())
+                && !"".equals(topCandidate.className())) {
+                contentBonus += getContentScore(topCandidate) * 0.2;
+            }
+
+            if (scored && (getContentScore(siblingNode) + contentBonus >= siblingScoreThreshold)) {
+                append = true;
+            }
+
+            if ("p".equals(siblingNode.tagName())) {
+                double linkDensity = getLinkDensity(siblingNode);
+                int nodeLength = stats.textLength(siblingNode);
+
+                if (nodeLength > 80 && linkDensity < 0.25) {
+                    append = true;
+                } else if (nodeLength < 80 && linkDensity == 0
+                           && Patterns.exists(Patterns.ENDS_WITH_DOT, siblingNode.text())) {
+                    append = true;
+                }
+            }
+
+            if (append) {
+                LOG.debug("Appending node: [" + siblingNode.getClass() + "]");
+
+                Element nodeToAppend = null;
+                if (!"div".equals(siblingNode.tagName()) && !"p".equals(siblingNode.tagName())) {
+                    /*
+                     * We have a node that isn't a common block level element, like a form or td tag. Turn it
+                     * into a div so it doesn't get filtered out later by accident.
+                     */
+
+                    LOG.debug("Altering siblingNode of " + siblingNode.tagName() + " to div.");
+                    nodeToAppend = changeElementTag(siblingNode, "div");
+                } else {
+                    nodeToAppend = siblingNode;
+                }
+
+                /*
+                 * To ensure a node does not interfere with readability styles, remove its classnames
+                 */
+                nodeToAppend.removeAttr("class");
+
+                /*
+                 * Append sibling and subtract from our list because it removes the node when you append to
+                 * another node
+                 */
+                stats.invalidate(nodeToAppend.parent());
+                articleContent.appendChild(nodeToAppend);
+            }
+        }
+
+        stats.invalidate(document.body());
+        document.body().empty();
+        document.body().appendChild(articleContent);
+        return articleContent;
+    }
+
+    /**
+     * @return true if the pass found enough text to believe in.
+     */
+    boolean foundArticle() {
+        return articleContent != null && stats.textLength(articleContent) >= MIN_ARTICLE_LENGTH;
+    }
+
+    Element getArticleContent() {
+        return articleContent;
+    }
+
+    Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return the number of elements under the page element when collectContent started.
+     */
+    int getElementCount() {
+        return elementCount;
+    }
+
+    void setMetrics(ReadabilityMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param inherited the scores the pass before left on the page element and its ancestors, or null for the
+     *            first pass.
+     * @param passedOn where to leave them for the next pass, or null if there is none.
+     */
+    void carryScores(CarriedScores inherited, CarriedScores passedOn) {
+        this.inheritedScores = inherited;
+        this.passedOnScores = passedOn;
+    }
+
+    private void setContentScore(Element node, double score) {
+        scores.set(node, score);
+    }
+
+    private boolean isElementScored(Element node) {
+        return scores.isScored(node);
+    }
+
+    private void incrementContentScore(Element node, double score) {
+        scores.increment(node, score);
+    }
+
+    private double getContentScore(Element node) {
+        return scores.get(node);
+    }
+
+    private void initializeNode(Element node) {
+        // CHECKSTYLE:OFF
+        scores.markInitialized(node);
+        String tagName = node.tagName();
+        if ("div".equals(tagName)) {
+            incrementContentScore(node, 5);
+        } else if ("pre".equals(tagName) || "td".equals(tagName) || "blockquote".equals(tagName)) {
+            incrementContentScore(node, 3);
+        } else if ("address".equals(tagName) || "ol".equals(tagName) || "ul".equals(tagName)
+                   || "dl".equals(tagName) || "dd".equals(tagName) || "dt".equals(tagName)
+                   || "li".equals(tagName) || "form".equals(tagName)) {
+            incrementContentScore(node, -3);
+        } else if (tagName.matches("h[1-6]") || "th".equals(tagName)) {
+            incrementContentScore(node, -5);
+        }
+        incrementContentScore(node, getClassWeight(node));
+        // CHECKSTYLE:ON
+    }
+
+    /**
+     * Get an elements class/id weight. Uses regular expressions to tell if this element looks good or bad.
+     * 
+     * @param Element
+     * @return number (Integer)
+     **/
+    private double getClassWeight(Element e) {
+        if (!classWeight) {
+            return 0;
+        }
+
+        int weight = 0;
+
+        /* Look for a special classname */
+        String className = e.className();
+        if (!"".equals(className)) {
+            int matched = Patterns.classify(className);
+            if ((matched & Patterns.NEGATIVE_BIT) != 0) {
+                weight -= 25;
+            }
+            if ((matched & Patterns.POSITIVE_BIT) != 0) {
+                weight += 25;
+            }
+        }
+
+        /* Look for a special ID */
+        String id = e.id();
+        if (!"".equals(id)) {
+            int matched = Patterns.classify(id);
+            if ((matched & Patterns.NEGATIVE_BIT) != 0) {
+                weight -= 25;
+            }
+            if ((matched & Patterns.POSITIVE_BIT) != 0) {
+                weight += 25;
+            }
+        }
+        return weight;
+    }
+
+    private Element changeElementTag(Element e, String newTag) {
+        stats.invalidate(e.parent());
+        return changeElementTag(document, e, newTag);
+    }
+
+    /**
+     * Replace an element with a new element with a different tag and the same children. The attributes are
+     * not copied.
+     */
+    static Element changeElementTag(Document document, Element e, String newTag) {
+        Element newElement = document.createElement(newTag);
+        /* JSoup gives us the live child list, so we need to make a copy. */
+        List<Node> copyOfChildNodeList = new ArrayList<Node>();
+        copyOfChildNodeList.addAll(e.childNodes());
+        for (Node n : copyOfChildNodeList) {
+            n.remove();
+            newElement.appendChild(n);
+        }
+        e.replaceWith(newElement);
+        return newElement;
+    }
+
+    /**
+     * Clean an element of all tags of type "tag" if they look fishy. "Fishy" is an algorithm based on content
+     * length, classnames, link density, number of images & embeds, etc.
+     * 
+     * @return void
+     **/
+    private void cleanConditionally(Element e, String tag) {
+
+        if (!cleanConditionally) {
+            return;
+        }
+
+        Elements tagsList = e.getElementsByTag(tag);
+        int curTagsLength = tagsList.size();
+
+        /**
+         * Gather counts for other typical elements embedded within. Traverse backwards so we can remove nodes
+         * at the same time without effecting the traversal. TODO: Consider taking into account original
+         * contentScore here.
+         **/
+        for (int i = curTagsLength - 1; i >= 0; i--) {
+            Element ee = tagsList.get(i);
+            if (ee.ownerDocument() == null) {
+                continue; // it a child of something we've already killed, so it
+                // has no document.
+            }
+            double weight = getClassWeight(ee);
+            double contentScore = getContentScore(ee);
+
+            LOG.debug("Cleaning Conditionally [" + ee.getClass() + "] (" + ee.className() + ":" + ee.id()
+                      + ")" + contentScore);
+
+            if (weight + contentScore < 0) {
+                LOG.debug("Negative content score");
+                removeElement(ee);
+            } else if (getCharCount(ee, ',') < 10) {
+                /**
+                 * If there are not very many commas, and the number of non-paragraph elements is more than
+                 * paragraphs or other ominous signs, remove the element.
+                 **/
+                int p = stats.tagCount(ee, SubtreeStats.P);
+                int img = stats.tagCount(ee, SubtreeStats.IMG);
+                int li = stats.tagCount(ee, SubtreeStats.LI) - 100;
+                int input = stats.tagCount(ee, SubtreeStats.INPUT);
+
+                int embedCount = stats.tagCount(ee, SubtreeStats.EMBED);
+                // removed code that pays specific attention to youtube.
+                double linkDensity = getLinkDensity(ee);
+                int contentLength = stats.textLength(ee);
+                boolean toRemove = false;
+
+                if (img > p) {
+                    toRemove = true;
+                } else if (li > p && !"ul".equals(tag) && !"ol".equals(tag)) {
+                    toRemove = true;
+                } else if (input > Math.floor(p / 3)) {
+                    toRemove = true;
+                } else if (contentLength < 25 && (img == 0 || img > 2)) {
+                    toRemove = true;
+                } else if (weight < 25 && linkDensity > 0.2) {
+                    toRemove = true;
+                } else if (weight >= 25 && linkDensity > 0.5) {
+                    toRemove = true;
+                } else if ((embedCount == 1 && contentLength < 75) || embedCount > 1) {
+                    toRemove = true;
+                }
+
+                if (toRemove) {
+                    LOG.debug("failed keep tests.");
+                    removeElement(ee);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clean out spurious headers from an Element. Checks things like classnames and link density.
+     * 
+     * @param Element
+     * @return void
+     **/
+    private void cleanHeaders(Element e) {
+        for (int headerIndex = 1; headerIndex < 3; headerIndex++) {
+            Elements headers = e.getElementsByTag("h" + headerIndex);
+            for (int i = headers.size() - 1; i >= 0; i--) {
+                if (getClassWeight(headers.get(i)) < 0 || getLinkDensity(headers.get(i)) > 0.33) {
+                    removeElement(headers.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepare the article node for display. Clean out any inline styles, iframes, forms, strip extraneous
+     * <p>
+     * tags, etc. This takes an element in, but returns a string.
+     * 
+     * @param Element
+     * @return void
+     **/
+    void prepArticle(Element articleContent) {
+        // we don't need to do this, we don't care
+        cleanStyles(articleContent);
+        // this replaces any break element or an nbsp with a plain break
+        // element.
+        // not needed. We will deal with breaks as we deal with breaks
+        // killBreaks(articleContent);
+
+        /* Clean out junk from the article content */
+        cleanConditionally(articleContent, "form");
+        clean(articleContent, "object");
+        clean(articleContent, "h1");
+
+        /**
+         * If there is only one h2, they are probably using it as a header and not a subheader, so remove it
+         * since we already have a header.
+         ***/
+        if (articleContent.getElementsByTag("h2").size() == 1) {
+            clean(articleContent, "h2");
+        }
+        clean(articleContent, "iframe");
+
+        cleanHeaders(articleContent);
+
+        /*
+         * Do these last as the previous stuff may have removed junk that will affect these
+         */
+        cleanConditionally(articleContent, "table");
+        cleanConditionally(articleContent, "ul");
+        //could have no children, will crash then
+        if (articleContent.children().size() != 0) {
+            cleanConditionally(articleContent.child(0), "div");
+        }
+
+        /* Remove extra paragraphs */
+        Elements articleParagraphs = articleContent.getElementsByTag("p");
+        for (Element para : articleParagraphs) {
+            int imgCount = stats.tagCount(para, SubtreeStats.IMG);
+            int embedCount = stats.tagCount(para, SubtreeStats.EMBED);
+            int objectCount = stats.tagCount(para, SubtreeStats.OBJECT);
+
+            // the text is trimmed, so it is all whitespace only if it is empty.
+            if (imgCount == 0 && embedCount == 0 && objectCount == 0 && stats.textLength(para) == 0) {
+                removeElement(para);
+            }
+        }
+
+        Elements parasWithPreceedingBreaks = articleContent.getElementsByTag("br + p");
+        for (Element pe : parasWithPreceedingBreaks) {
+            Element brElement = pe.previousElementSibling();
+            removeElement(brElement);
+        }
+    }
+
+    private void cleanStyles(Element articleContent) {
+        // we want to clear off the style attributes in case they influence
+        // something else.
+        for (Element e : articleContent.getAllElements()) {
+            e.removeAttr("style");
+        }
+    }
+
+    /**
+     * Clean a node of all elements of type "tag".
+     * 
+     * @param Element
+     * @param string tag to clean
+     **/
+    private void clean(Element e, String tag) {
+        Elements targetList = e.getElementsByTag(tag);
+        for (Element target : targetList) {
+            removeElement(target);
+        }
+    }
+
+    /**
+     * Remove an element from the tree, keeping the subtree statistics of its ancestors honest.
+     */
+    private void removeElement(Element e) {
+        stats.invalidate(e.parent());
+        e.remove();
+    }
+
+    private double getLinkDensity(Element e) {
+        double textLength = stats.textLength(e);
+        double linkLength = stats.linkTextLength(e);
+        return linkLength / textLength;
+    }
+
+    /**
+     * Get the number of times a string s appears in the node e.
+     * 
+     * @param Element
+     * @param string - what to split on. Default is ","
+     * @return number (integer)
+     **/
+    int getCharCount(Element e, char s) {
+        if (s == ',') {
+            return stats.commaSegments(e) - 1;
+        }
+        return e.text().split(Character.toString(s)).length - 1;
+    }
+}
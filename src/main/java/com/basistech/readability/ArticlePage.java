@@ -0,0 +1,70 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+
+/**
+ * One page of a multi-page article: where it came from, its title, and where its text is in the text of the
+ * whole article. When the text was written to a sink, the span is a position in what was written.
+ */
+public final class ArticlePage {
+    private final String url;
+    private final String title;
+    private final int start;
+    private final int end;
+
+    ArticlePage(String url, String title, int start, int end) {
+        this.url = url;
+        this.title = title;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the title of this page, worked out the same way as the title of the article.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the offset of the first character of the text of this page.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset just past the text of this page.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public int getLength() {
+        return end - start;
+    }
+
+    public String toString() {
+        return url + "[" + start + "-" + end + "]";
+    }
+}
@@ -0,0 +1,423 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a corpus of pages through readability in three stages, each with its own threads: reading the pages,
+ * extracting the articles, and writing the text. The stages are connected by bounded queues, so a fast stage
+ * waits for a slow one instead of piling pages up in memory.
+ * <p>
+ * Each page is written to the output directory as its file name with 'html' replaced by 'txt', containing
+ * the title, a paragraph separator, a line separator and the article text, in UTF-8. If an input directory
+ * is set, the output keeps the path of each page relative to it, so a tree of input comes out as the same tree
+ * of output.
+ */
+public final class BatchProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchProcessor.class);
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final ReadabilityExtractor extractor;
+    private final PageReader pageReader;
+    private File inputDirectory;
+    private File outputDirectory;
+    private int readerThreads = 1;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int writerThreads = 1;
+    private int queueCapacity = 256;
+
+    /**
+     * One page on its way through the stages.
+     */
+    private static final class Page {
+        private final File file;
+        private String content;
+        private ExtractionResult result;
+
+        Page(File file) {
+            this.file = file;
+        }
+    }
+
+    // marks the end of the input on a queue.
+    private static final Page END = new Page(null);
+
+    /**
+     * What happened in one run.
+     */
+    public static final class Summary {
+        private final AtomicLong pagesRead = new AtomicLong();
+        private final AtomicLong pagesExtracted = new AtomicLong();
+        private final AtomicLong pagesWritten = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong charsRead = new AtomicLong();
+        private final AtomicLong charsWritten = new AtomicLong();
+        private final LatencyHistogram readLatency = new LatencyHistogram();
+        private final LatencyHistogram extractLatency = new LatencyHistogram();
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        private long elapsedNanos;
+
+        public long getPagesRead() {
+            return pagesRead.get();
+        }
+
+        public long getPagesExtracted() {
+            return pagesExtracted.get();
+        }
+
+        public long getPagesWritten() {
+            return pagesWritten.get();
+        }
+
+        /**
+         * @return pages that failed in any stage.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getCharsRead() {
+            return charsRead.get();
+        }
+
+        public long getCharsWritten() {
+            return charsWritten.get();
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return pages written per second of wall time.
+         */
+        public double getPagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : pagesWritten.get() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d pages written, %d failed, in %.2fs: %.1f pages/s, %.2f MB/s of input",
+                                    pagesWritten.get(), failures.get(), seconds, getPagesPerSecond(),
+                                    seconds == 0 ? 0 : charsRead.get() / seconds / (1024 * 1024)));
+            sb.append(LINE_SEPARATOR).append("  read:    ").append(readLatency.summarize());
+            sb.append(LINE_SEPARATOR).append("  extract: ").append(extractLatency.summarize());
+            sb.append(LINE_SEPARATOR).append("  write:   ").append(writeLatency.summarize());
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @param config the pages are read with its page reader and extracted with its other settings.
+     */
+    public BatchProcessor(ReadabilityConfig config) {
+        if (config.getPageReader() == null) {
+            throw new IllegalArgumentException("A page reader is required to read the pages");
+        }
+        this.extractor = new ReadabilityExtractor(config);
+        this.pageReader = config.getPageReader();
+    }
+
+    /**
+     * Process all of the pages, returning when they have all been written or have failed.
+     *
+     * @param inputs the files to process. This is only read by one thread at a time.
+     */
+    public Summary process(final Iterator<File> inputs) throws InterruptedException {
+        if (outputDirectory == null) {
+            throw new IllegalStateException("No output directory");
+        }
+        outputDirectory.mkdirs();
+        final Summary summary = new Summary();
+        final BlockingQueue<Page> extractQueue = new ArrayBlockingQueue<Page>(queueCapacity);
+        final BlockingQueue<Page> writeQueue = new ArrayBlockingQueue<Page>(queueCapacity);
+        final AtomicInteger readersLeft = new AtomicInteger(readerThreads);
+        final AtomicInteger workersLeft = new AtomicInteger(workerThreads);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int x = 0; x < readerThreads; x++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Page page;
+                        while ((page = nextPage(inputs)) != null) {
+                            if (read(page, summary)) {
+                                extractQueue.put(page);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (readersLeft.decrementAndGet() == 0) {
+                            endOfInput(extractQueue, workerThreads);
+                        }
+                    }
+                }
+            }, "readability-reader-" + x));
+        }
+        for (int x = 0; x < workerThreads; x++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Page page;
+                        while ((page = extractQueue.take()) != END) {
+                            if (extract(page, summary)) {
+                                writeQueue.put(page);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (workersLeft.decrementAndGet() == 0) {
+                            endOfInput(writeQueue, writerThreads);
+                        }
+                    }
+                }
+            }, "readability-worker-" + x));
+        }
+        for (int x = 0; x < writerThreads; x++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Page page;
+                        while ((page = writeQueue.take()) != END) {
+                            write(page, summary);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "readability-writer-" + x));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private static Page nextPage(Iterator<File> inputs) {
+        synchronized (inputs) {
+            return inputs.hasNext() ? new Page(inputs.next()) : null;
+        }
+    }
+
+    /* Tell each consumer of a queue that there is nothing more coming. */
+    private static void endOfInput(BlockingQueue<Page> queue, int consumers) {
+        for (int x = 0; x < consumers; x++) {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                // the whole run is being torn down; the consumers are being interrupted too.
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean read(Page page, Summary summary) {
+        long start = System.nanoTime();
+        try {
+            page.content = pageReader.readPage(page.file.getPath());
+        } catch (PageReadException e) {
+            LOG.error("PageReadError while reading: " + page.file, e);
+        } catch (Throwable e) {
+            // anything at all is one failed page; see extract.
+            LOG.error("Error while reading: " + page.file, e);
+        }
+        summary.readLatency.record(System.nanoTime() - start);
+        if (page.content == null) {
+            summary.failures.incrementAndGet();
+            return false;
+        }
+        summary.pagesRead.incrementAndGet();
+        summary.charsRead.addAndGet(page.content.length());
+        return true;
+    }
+
+    private boolean extract(Page page, Summary summary) {
+        long start = System.nanoTime();
+        try {
+            page.result = extractor.extract(page.file.getPath(), page.content);
+        } catch (PageReadException e) {
+            LOG.error("PageReadError while processing: " + page.file, e);
+        } catch (Throwable e) {
+            /*
+             * Errors too: a StackOverflowError on a deeply nested page must not kill the thread. Once every
+             * consumer of a queue is gone, the stage before it blocks on the full queue and the run never ends.
+             */
+            LOG.error("Error while processing: " + page.file, e);
+        }
+        // let the content go; the write queue only needs the result.
+        page.content = null;
+        summary.extractLatency.record(System.nanoTime() - start);
+        if (page.result == null) {
+            summary.failures.incrementAndGet();
+            return false;
+        }
+        summary.pagesExtracted.incrementAndGet();
+        return true;
+    }
+
+    private void write(Page page, Summary summary) {
+        long start = System.nanoTime();
+        File outputFile = new File(outputDirectory, outputPath(page.file).replaceAll("html$", "txt"));
+        Writer writer = null;
+        try {
+            if (inputDirectory != null) {
+                outputFile.getParentFile().mkdirs();
+            }
+            writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(outputFile)), "UTF-8");
+            // force a sentence break between title and body with \u2029.
+            String title = page.result.getTitle();
+            String content = page.result.getArticleText();
+            writer.write(title == null ? "" : title.trim());
+            writer.write('\u2029');
+            writer.write(LINE_SEPARATOR);
+            writer.write(String.valueOf(content));
+            writer.close();
+            writer = null;
+            summary.pagesWritten.incrementAndGet();
+            summary.charsWritten.addAndGet(content == null ? 0 : content.length());
+        } catch (IOException e) {
+            LOG.error("Failed to write " + outputFile, e);
+            summary.failures.incrementAndGet();
+        } catch (Throwable e) {
+            // see extract; with one writer, a single bad page would stall the whole run.
+            LOG.error("Error while writing " + outputFile, e);
+            summary.failures.incrementAndGet();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+        summary.writeLatency.record(System.nanoTime() - start);
+    }
+
+    private String outputPath(File file) {
+        if (inputDirectory != null) {
+            String root = inputDirectory.getAbsolutePath() + File.separator;
+            String path = file.getAbsolutePath();
+            if (path.startsWith(root)) {
+                return path.substring(root.length());
+            }
+        }
+        return file.getName();
+    }
+
+    public File getInputDirectory() {
+        return inputDirectory;
+    }
+
+    /**
+     * @param inputDirectory the root of the input tree; output paths are made relative to this. If null, all
+     *            of the output goes directly in the output directory.
+     */
+    public void setInputDirectory(File inputDirectory) {
+        this.inputDirectory = inputDirectory;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    public int getReaderThreads() {
+        return readerThreads;
+    }
+
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = atLeastOne(readerThreads, "readerThreads");
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @param workerThreads the number of threads extracting articles. The default is the number of
+     *            processors.
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = atLeastOne(workerThreads, "workerThreads");
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = atLeastOne(writerThreads, "writerThreads");
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity how many pages can wait between two stages before the earlier stage waits.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = atLeastOne(queueCapacity, "queueCapacity");
+    }
+
+    private static int atLeastOne(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1");
+        }
+        return value;
+    }
+}
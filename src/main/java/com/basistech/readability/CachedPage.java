@@ -0,0 +1,83 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+/**
+ * A page as kept by a {@link CachingPageReader}: the decoded content along with what is needed to ask the
+ * server whether it has changed. Instances are immutable.
+ */
+public final class CachedPage {
+    private final String url;
+    private final String content;
+    private final String charset;
+    private final String etag;
+    private final String lastModified;
+    private final long fetchedAt;
+
+    /**
+     * @param etag the ETag header, or null.
+     * @param lastModified the Last-Modified header, exactly as the server sent it, or null.
+     * @param fetchedAt when the page was last fetched or revalidated, in milliseconds.
+     */
+    public CachedPage(String url, String content, String charset, String etag, String lastModified,
+                      long fetchedAt) {
+        this.url = url;
+        this.content = content;
+        this.charset = charset;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+    }
+
+    /**
+     * @return a copy for a page that the server says hasn't changed, with any validators it sent.
+     */
+    CachedPage revalidated(String newEtag, String newLastModified) {
+        return new CachedPage(url, content, charset, newEtag != null ? newEtag : etag,
+                              newLastModified != null ? newLastModified : lastModified,
+                              System.currentTimeMillis());
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the name of the character set the page was decoded from.
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+}
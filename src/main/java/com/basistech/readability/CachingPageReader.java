@@ -0,0 +1,126 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A page reader that keeps the pages it reads on disk and, on later reads, asks the underlying reader
+ * whether they have changed instead of downloading them again. A page that hasn't changed is served from
+ * disk, already decoded, so it skips the transfer and the charset detection.
+ * <p>
+ * Pages younger than the {@link #setFreshnessLifetime(long) freshness lifetime} are served without asking
+ * at all. The default lifetime is 0, so every read is revalidated.
+ */
+public class CachingPageReader implements PageReader {
+    private final RevalidatingPageReader delegate;
+    private final DiskPageStore store;
+    private volatile long freshnessLifetime;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param delegate the reader that does the actual fetching.
+     * @param directory where to keep the pages. It's created if need be; pages already in it are used.
+     * @param maxBytes the most disk space to use for pages.
+     */
+    public CachingPageReader(RevalidatingPageReader delegate, File directory, long maxBytes) throws IOException {
+        this.delegate = delegate;
+        this.store = new DiskPageStore(directory, maxBytes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String readPage(String url) throws PageReadException {
+        CachedPage cached = store.get(url);
+        if (cached != null && System.currentTimeMillis() - cached.getFetchedAt() < freshnessLifetime) {
+            hits.incrementAndGet();
+            return cached.getContent();
+        }
+        CachedPage page = delegate.readPage(url, cached);
+        if (page == null) {
+            return null;
+        }
+        if (cached != null && page.getContent() == cached.getContent()) {
+            revalidations.incrementAndGet();
+            // only rewrite the file if there's something new to record.
+            if (freshnessLifetime > 0 || !same(page.getEtag(), cached.getEtag())
+                || !same(page.getLastModified(), cached.getLastModified())) {
+                store.put(page);
+            }
+        } else {
+            misses.incrementAndGet();
+            store.put(page);
+        }
+        return page.getContent();
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setCharsetDetector(PageCharsetDetector detector) {
+        delegate.setCharsetDetector(detector);
+    }
+
+    public long getFreshnessLifetime() {
+        return freshnessLifetime;
+    }
+
+    /**
+     * @param freshnessLifetime milliseconds after a fetch during which the stored page is used without
+     *            checking with the server.
+     */
+    public void setFreshnessLifetime(long freshnessLifetime) {
+        this.freshnessLifetime = freshnessLifetime;
+    }
+
+    /**
+     * @return reads served from disk without asking the server.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return reads where the server said the stored page was still good.
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return reads that had to download the page.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the bytes currently used on disk.
+     */
+    public long getStoredBytes() {
+        return store.getTotalBytes();
+    }
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * The scores of the page element and the elements above it, handed from one grabArticle pass to the next.
+ * The passes used to be run one after another on the same tree, putting it back between them by parsing the
+ * html of the page element into it again. That replaced everything below the page element but left the page
+ * element and its ancestors alone, and their scores were attributes, so each pass started with whatever the
+ * passes before it had given them. The retries depend on that: an element that is already initialized is not
+ * a candidate again.
+ * <p>
+ * Elements are identified by how far above the page element they are, so that the scores can be handed from
+ * one copy of the document to another when the passes run speculatively. In that case a pass waits for the
+ * one before it to finish scoring; if that pass has not started yet, it is run on the waiting thread.
+ */
+final class CarriedScores {
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private Runnable producer;
+    // written before the latch opens, read after.
+    private double[] scores;
+    private boolean[] scored;
+    private boolean[] initialized;
+    private boolean captured;
+
+    /**
+     * @param producer the pass that captures these scores, run before waiting for them if it has not started
+     *            yet. Running it again once it has started has to do nothing, as it does for a FutureTask.
+     */
+    void setProducer(Runnable producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * Save the scores of the page element and its ancestors, once the pass has finished scoring.
+     */
+    void capture(ScoreTable table, Element pageElement) {
+        int count = 0;
+        for (Element element = pageElement; element != null; element = element.parent()) {
+            count++;
+        }
+        scores = new double[count];
+        scored = new boolean[count];
+        initialized = new boolean[count];
+        int depth = 0;
+        for (Element element = pageElement; element != null; element = element.parent()) {
+            scored[depth] = table.isScored(element);
+            scores[depth] = table.get(element);
+            initialized[depth] = table.isInitialized(element);
+            depth++;
+        }
+        captured = true;
+        ready.countDown();
+    }
+
+    /**
+     * Let anyone waiting go, whether or not the scores were captured. Passes call this when they end, however
+     * they end.
+     */
+    void release() {
+        ready.countDown();
+    }
+
+    /**
+     * Give the page element and its ancestors the scores that were captured, waiting for them if need be.
+     *
+     * @throws CancellationException if the thread is interrupted while waiting, or the pass that was to capture
+     *             the scores ended without doing so. Either way, nobody will want the result of this pass.
+     */
+    void applyTo(ScoreTable table, Element pageElement) {
+        if (producer != null) {
+            producer.run();
+        }
+        try {
+            ready.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the scores of the pass before");
+        }
+        if (!captured) {
+            throw new CancellationException("The pass before ended without scoring");
+        }
+        int depth = 0;
+        for (Element element = pageElement; element != null && depth < scores.length;
+             element = element.parent()) {
+            if (scored[depth]) {
+                table.set(element, scores[depth]);
+            }
+            if (initialized[depth]) {
+                table.markInitialized(element);
+            }
+            depth++;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers how class and id strings were classified by the scoring heuristics. Pages from one site use the
+ * same few class names over and over, so after the first few pages nearly every lookup is a hit. There is
+ * one instance for the whole process, shared by all threads and extractors; its counters show how well it
+ * is doing.
+ * <p>
+ * The cache holds at most a set number of strings. When it fills up it is emptied and fills again with
+ * whatever is in use at the time, which is cheaper than keeping track of what was used last and does just as
+ * well for this kind of data. Very long strings are never cached, since they are unlikely to come round
+ * again.
+ */
+public final class ClassificationCache {
+    static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final int MAX_KEY_LENGTH = 256;
+    private static final ClassificationCache SHARED = new ClassificationCache();
+
+    private final ConcurrentMap<String, Integer> flags = new ConcurrentHashMap<String, Integer>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ClassificationCache() {
+        //
+    }
+
+    /**
+     * @return the cache used by every extraction in this process.
+     */
+    public static ClassificationCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the flags Patterns.computeClassification gives for the string.
+     */
+    int lookup(String string) {
+        if (string.length() == 0 || string.length() > MAX_KEY_LENGTH) {
+            return Patterns.computeClassification(string);
+        }
+        Integer cached = flags.get(string);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached.intValue();
+        }
+        misses.incrementAndGet();
+        int computed = Patterns.computeClassification(string);
+        if (maxEntries > 0 && flags.putIfAbsent(string, Integer.valueOf(computed)) == null
+            && size.incrementAndGet() > maxEntries) {
+            clear();
+        }
+        return computed;
+    }
+
+    /**
+     * Forget everything. The counters are kept.
+     */
+    public void clear() {
+        int dropped = size.getAndSet(0);
+        flags.clear();
+        evictions.addAndGet(dropped);
+    }
+
+    /**
+     * @param maxEntries the most strings to keep; 0 turns the cache off. The default is 10000.
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        if (size.get() > maxEntries) {
+            clear();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return roughly how many strings are cached.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache, or 0 if there have been none.
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double)hitCount / total;
+    }
+
+    /**
+     * @return cached strings dropped when the cache filled up or was cleared.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("classification cache: %d entries, %d hits, %d misses (%.1f%%), %d evicted",
+                             size(), getHits(), getMisses(), 100 * getHitRate(), getEvictions());
+    }
+}
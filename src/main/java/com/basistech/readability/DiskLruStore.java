@@ -0,0 +1,169 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A directory of files, one per key, whose total size is bounded; when it goes over, the least recently
+ * used files are deleted. Recency survives restarts through the files' modification times. What goes in
+ * the files is up to the caller, who writes a temporary file and then commits it, so that nobody ever sees
+ * half a file.
+ */
+final class DiskLruStore {
+    private static final String SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+    // key to file size, least recently used first.
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long totalBytes;
+    private long evictions;
+
+    /**
+     * @param directory where to keep the files. It's created if need be; files already in it are used.
+     */
+    DiskLruStore(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create cache directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                index.put(name.substring(0, name.length() - SUFFIX.length()), Long.valueOf(file.length()));
+                totalBytes += file.length();
+            } else if (name.endsWith(TEMP_SUFFIX)) {
+                // left over from a crash in the middle of a write.
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * @return the file for the key, marked as just used, or null if there isn't one.
+     */
+    File get(String key) {
+        synchronized (this) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        File file = fileFor(key);
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * @return a file to write an entry into before passing it to {@link #commit(String, File)}.
+     */
+    File newTempFile(String key) throws IOException {
+        return File.createTempFile(key, TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * Put a written temporary file in place as the entry for the key, replacing any entry already there.
+     */
+    synchronized void commit(String key, File temp) throws IOException {
+        File file = fileFor(key);
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Can't rename " + temp + " to " + file);
+            }
+        }
+        Long old = index.put(key, Long.valueOf(file.length()));
+        totalBytes += file.length() - (old == null ? 0 : old.longValue());
+        evict();
+    }
+
+    synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size.longValue();
+            fileFor(key).delete();
+        }
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> entries = index.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.hasNext()) {
+            Map.Entry<String, Long> eldest = entries.next();
+            totalBytes -= eldest.getValue().longValue();
+            fileFor(eldest.getKey()).delete();
+            entries.remove();
+            evictions++;
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * @return a key for a string that is safe to use in a file name.
+     */
+    static String hashKey(String string) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(string.getBytes("utf-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps pages in a {@link DiskLruStore}, one file per url, named by a hash of the url.
+ * <p>
+ * Each file holds a version number, the url, the charset, the validators and the fetch time, followed by
+ * the content in UTF-8.
+ */
+final class DiskPageStore {
+    private static final Logger LOG = LoggerFactory.getLogger(DiskPageStore.class);
+    private static final int VERSION = 1;
+
+    private final DiskLruStore store;
+
+    DiskPageStore(File directory, long maxBytes) throws IOException {
+        store = new DiskLruStore(directory, maxBytes);
+    }
+
+    /**
+     * @return the stored page, or null.
+     */
+    CachedPage get(String url) {
+        String key = DiskLruStore.hashKey(url);
+        File file = store.get(key);
+        if (file == null) {
+            return null;
+        }
+        InputStream input = null;
+        try {
+            input = new BufferedInputStream(new FileInputStream(file));
+            DataInputStream data = new DataInputStream(input);
+            if (data.readInt() != VERSION) {
+                store.remove(key);
+                return null;
+            }
+            String storedUrl = data.readUTF();
+            if (!storedUrl.equals(url)) {
+                // a hash collision; treat it as a miss.
+                return null;
+            }
+            String charset = data.readUTF();
+            String etag = emptyToNull(data.readUTF());
+            String lastModified = emptyToNull(data.readUTF());
+            long fetchedAt = data.readLong();
+            String content = PageDecoder.decode(data, AbstractPageReader.UTF8, (int)file.length());
+            return new CachedPage(url, content, charset, etag, lastModified, fetchedAt);
+        } catch (IOException e) {
+            LOG.warn("Dropping unreadable cache file " + file, e);
+            store.remove(key);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    void put(CachedPage page) {
+        String key = DiskLruStore.hashKey(page.getUrl());
+        File temp = null;
+        OutputStream output = null;
+        try {
+            temp = store.newTempFile(key);
+            output = new BufferedOutputStream(new FileOutputStream(temp));
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeInt(VERSION);
+            data.writeUTF(page.getUrl());
+            data.writeUTF(page.getCharset());
+            data.writeUTF(page.getEtag() == null ? "" : page.getEtag());
+            data.writeUTF(page.getLastModified() == null ? "" : page.getLastModified());
+            data.writeLong(page.getFetchedAt());
+            data.write(page.getContent().getBytes(AbstractPageReader.UTF8.name()));
+            data.close();
+            output = null;
+            store.commit(key, temp);
+            temp = null;
+        } catch (IOException e) {
+            LOG.warn("Failed to cache " + page.getUrl(), e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    long getTotalBytes() {
+        return store.getTotalBytes();
+    }
+
+    private static String emptyToNull(String value) {
+        return "".equals(value) ? null : value;
+    }
+}
@@ -0,0 +1,66 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+/**
+ * A structural copy of the content of an element, so that grabArticle can put the page back the way it was
+ * before trying again with different flags. This used to be done by saving the html() of the page and
+ * parsing it back in, which costs a full serialization up front and a full parse for each retry.
+ * <p>
+ * The copy is detached from the document, so nothing that happens to the live tree can reach it. Putting it
+ * back is not quite the end of it: the parse reshaped the text of the page, and the retries see the page as
+ * it left it, so the restored content is put through the same {@link RoundTrip}. A snapshot is used once;
+ * the next pass takes a new one of the page as this one left it.
+ */
+final class DomSnapshot {
+    private final Element owner;
+    private final List<Node> children;
+    private boolean consumed;
+
+    DomSnapshot(Element owner) {
+        this.owner = owner;
+        List<Node> liveChildren = owner.childNodes();
+        children = new ArrayList<Node>(liveChildren.size());
+        for (Node child : liveChildren) {
+            children.add(child.clone());
+        }
+    }
+
+    /**
+     * Replace the content of the element with what owner.html(html) would give it, html being the html() of
+     * the element when the snapshot was taken.
+     */
+    void restore() {
+        if (consumed) {
+            throw new IllegalStateException("Snapshot already used up");
+        }
+        owner.empty();
+        for (Node child : children) {
+            owner.appendChild(child);
+        }
+        consumed = true;
+        RoundTrip.reflow(owner);
+    }
+}
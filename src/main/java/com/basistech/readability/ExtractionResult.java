@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What one call to {@link ReadabilityExtractor#extract(String)} found.
+ */
+public final class ExtractionResult {
+    private final String url;
+    private final String title;
+    private final String articleText;
+    private final String nextPageLink;
+    private final boolean impossible;
+    private final List<String> xmlImages;
+    // null for a result from the cache, which only holds single pages.
+    private final List<ArticlePage> pages;
+
+    ExtractionResult(String url, String title, String articleText, String nextPageLink, boolean impossible,
+                     List<String> xmlImages) {
+        this(url, title, articleText, nextPageLink, impossible, xmlImages, null);
+    }
+
+    ExtractionResult(String url, String title, String articleText, String nextPageLink, boolean impossible,
+                     List<String> xmlImages, List<ArticlePage> pages) {
+        this.url = url;
+        this.title = title;
+        this.articleText = articleText;
+        this.nextPageLink = nextPageLink;
+        this.impossible = impossible;
+        this.xmlImages = xmlImages == null
+            ? Collections.<String>emptyList() : Collections.unmodifiableList(xmlImages);
+        this.pages = pages == null ? null : Collections.unmodifiableList(pages);
+    }
+
+    /**
+     * @return the same result for another url with the same content.
+     */
+    ExtractionResult withUrl(String otherUrl) {
+        return new ExtractionResult(otherUrl, title, articleText, nextPageLink, impossible, xmlImages);
+    }
+
+    /**
+     * @return the url that was asked for.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArticleText() {
+        return articleText;
+    }
+
+    public String getNextPageLink() {
+        return nextPageLink;
+    }
+
+    /**
+     * @return true if the page was something we can't deal with, such as a frameset.
+     */
+    public boolean isImpossible() {
+        return impossible;
+    }
+
+    /**
+     * @return the HTML of the article content of each page, for testing and debugging.
+     */
+    public List<String> getXmlImages() {
+        return xmlImages;
+    }
+
+    /**
+     * @return the pages the article was put together from, in order, with the span of each in the article
+     *         text.
+     */
+    public List<ArticlePage> getPages() {
+        if (pages != null) {
+            return pages;
+        }
+        if (articleText == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new ArticlePage(url, title, 0, articleText.length()));
+    }
+}
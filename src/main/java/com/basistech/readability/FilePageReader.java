@@ -29,7 +29,7 @@ import org.slf4j.LoggerFactory;
 /**
  *
  */
-public class FilePageReader extends AbstractPageReader implements PageReader {
+public class FilePageReader extends AbstractPageReader implements StreamPageReader {
     private static final Logger LOG = LoggerFactory.getLogger(FilePageReader.class);
 
     private File baseDirectory;
@@ -37,14 +37,13 @@ public class FilePageReader extends AbstractPageReader implements PageReader {
     /** {@inheritDoc} */
     @Override
     public String readPage(String url) throws PageReadException {
-        int lastSlash = url.replace("\\", "/").lastIndexOf('/');
-        File testFile = new File(baseDirectory, url.substring(lastSlash + 1));
+        File testFile = fileFor(url);
         LOG.info("Reading " + testFile + " for " + url);
         FileInputStream fis = null;
         try {
             try {
                 fis = new FileInputStream(testFile);
-                return readContent(fis, null);
+                return readContent(fis, null, testFile.length());
             } catch (IOException e) {
                 throw new PageReadException("Failed to read " + url, e);
             }
@@ -55,6 +54,31 @@ public class FilePageReader extends AbstractPageReader implements PageReader {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public PageStream openPage(String url) throws PageReadException {
+        File testFile = fileFor(url);
+        LOG.info("Opening " + testFile + " for " + url);
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(testFile);
+            PageStream page = openContent(fis, null, testFile.length());
+            fis = null;
+            return page;
+        } catch (IOException e) {
+            throw new PageReadException("Failed to read " + url, e);
+        } finally {
+            if (fis != null) {
+                IOUtils.closeQuietly(fis);
+            }
+        }
+    }
+
+    private File fileFor(String url) {
+        int lastSlash = url.replace("\\", "/").lastIndexOf('/');
+        return new File(baseDirectory, url.substring(lastSlash + 1));
+    }
+
     public void setBaseDirectory(File baseDirectory) {
         this.baseDirectory = baseDirectory;
     }
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks a directory tree, depth first, handing out the files that pass a filter. Directories are listed one
+ * at a time as the walk reaches them, so walking a corpus of millions of files in thousands of shards holds
+ * only the listings on the current path in memory, rather than a list of every file. Within a directory,
+ * entries come out in name order, so runs over the same tree see the same order.
+ */
+public final class FileTreeIterator implements Iterator<File> {
+    // a stack of the listings of the directories on the current path.
+    private final LinkedList<Iterator<File>> pending = new LinkedList<Iterator<File>>();
+    private final FileFilter filter;
+    private File next;
+
+    /**
+     * @param root the directory to walk. If it's a plain file, that file is the whole walk.
+     * @param filter which files to return; directories are always descended into. null accepts everything.
+     */
+    public FileTreeIterator(File root, FileFilter filter) {
+        this.filter = filter;
+        pending.add(Arrays.asList(root).iterator());
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasNext() {
+        while (next == null && !pending.isEmpty()) {
+            Iterator<File> listing = pending.getLast();
+            if (!listing.hasNext()) {
+                pending.removeLast();
+                continue;
+            }
+            File file = listing.next();
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children != null) {
+                    Arrays.sort(children);
+                    pending.add(Arrays.asList(children).iterator());
+                }
+            } else if (filter == null || filter.accept(file)) {
+                next = file;
+            }
+        }
+        return next != null;
+    }
+
+    /** {@inheritDoc} */
+    public File next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        File file = next;
+        next = null;
+        return file;
+    }
+
+    /** {@inheritDoc} */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
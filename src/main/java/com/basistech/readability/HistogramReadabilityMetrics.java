@@ -0,0 +1,118 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics kept in memory: a latency histogram for each stage and each grabArticle pass, and the counters.
+ * Good for a summary at the end of a run, or for an exporter that polls it. One of these can be shared by
+ * any number of extractions.
+ */
+public class HistogramReadabilityMetrics implements ReadabilityMetrics {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LatencyHistogram[] stageLatency = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram[] passLatency = new LatencyHistogram[Readability.PASS_COUNT];
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTERS.length);
+
+    public HistogramReadabilityMetrics() {
+        for (int x = 0; x < stageLatency.length; x++) {
+            stageLatency[x] = new LatencyHistogram();
+        }
+        for (int x = 0; x < passLatency.length; x++) {
+            passLatency[x] = new LatencyHistogram();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordTime(Stage stage, long nanos) {
+        stageLatency[stage.ordinal()].record(nanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordPass(int pass, long nanos, boolean foundArticle) {
+        if (pass >= 0 && pass < passLatency.length) {
+            passLatency[pass].record(nanos);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void increment(Counter counter, long amount) {
+        counts.addAndGet(counter.ordinal(), amount);
+    }
+
+    public long getCount(Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+
+    /**
+     * @return the number of times the stage was timed.
+     */
+    public long getTimes(Stage stage) {
+        return stageLatency[stage.ordinal()].count();
+    }
+
+    public double getMeanNanos(Stage stage) {
+        return stageLatency[stage.ordinal()].meanNanos();
+    }
+
+    /**
+     * @param fraction for example 0.99 for the 99th percentile.
+     * @return the percentile, to within 25%, or 0 if the stage has not been timed.
+     */
+    public long getPercentileNanos(Stage stage, double fraction) {
+        return stageLatency[stage.ordinal()].percentileNanos(fraction);
+    }
+
+    public long getMaxNanos(Stage stage) {
+        return stageLatency[stage.ordinal()].maxNanos();
+    }
+
+    /**
+     * @return a line for each stage and pass that has been timed, then the counters.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : STAGES) {
+            LatencyHistogram latency = stageLatency[stage.ordinal()];
+            if (latency.count() > 0) {
+                sb.append(String.format("%-20s", stage)).append(latency.summarize()).append(LINE_SEPARATOR);
+            }
+        }
+        for (int pass = 0; pass < passLatency.length; pass++) {
+            if (passLatency[pass].count() > 0) {
+                sb.append(String.format("%-20s", "PASS_" + pass)).append(passLatency[pass].summarize());
+                sb.append(LINE_SEPARATOR);
+            }
+        }
+        for (Counter counter : COUNTERS) {
+            if (counter.ordinal() > 0) {
+                sb.append(' ');
+            }
+            sb.append(counter).append('=').append(counts.get(counter.ordinal()));
+        }
+        return sb.toString();
+    }
+}
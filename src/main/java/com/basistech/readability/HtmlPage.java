@@ -17,6 +17,7 @@
  */
 package com.basistech.readability;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -63,24 +64,66 @@ public class HtmlPage extends XmlDataMap {
 
     // the data as formatted for RLP -- just the PC-DATA.
     private String pcData;
+    private boolean processed;
     private String mimeType;
 
     public HtmlPage() {
         super();
     }
 
+    /**
+     * @param capacity how many characters of text to make room for up front.
+     */
+    public HtmlPage(int capacity) {
+        super(capacity);
+    }
+
     public void process(Document document) {
+        // the buffer is about to grow; a string made from it before is out of date.
+        pcData = null;
         Element body = document.body();
-        if (body != null) { // page might have no body.
+        // page might have no body.
+        processed = body != null;
+        if (processed) {
             process(body);
-            pcData = pcDataBuffer.toString();
         }
     }
 
+    /**
+     * Write the text of the body out as it is found, rather than keeping it; getPcData has nothing for a
+     * document processed this way, and whatever was processed before is forgotten.
+     *
+     * @param document the page.
+     * @param out where the text goes. It is not flushed or closed.
+     * @throws IOException if out does.
+     */
+    public void process(Document document, Appendable out) throws IOException {
+        Element body = document.body();
+        if (body != null) {
+            // this resets first, which clears pcData and processed as well.
+            process(body, out);
+        } else {
+            reset();
+        }
+    }
+
+    /**
+     * @return the text, or null if the last document had no body. The string is made on the first call.
+     */
     public String getPcData() {
+        if (pcData == null && processed) {
+            pcData = pcDataBuffer.toString();
+        }
         return pcData;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        pcData = null;
+        processed = false;
+    }
+
     @Override
     protected ElementAction classifyElement(Element element) {
         if (element.hasAttr("basisInline")) {
@@ -18,13 +18,35 @@
 
 package com.basistech.readability;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -35,51 +57,555 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Reads pages over HTTP. All of the threads using one reader share a pool of kept-alive connections, so
+ * fetching several pages from the same site (as when following next-page links) doesn't open a new
+ * connection for each. Call {@link #shutdown()} to close the pool.
  */
-public class HttpPageReader extends AbstractPageReader implements PageReader {
+public class HttpPageReader extends AbstractPageReader implements StreamPageReader, RevalidatingPageReader {
     static final Logger LOG = LoggerFactory.getLogger(HttpPageReader.class);
 
+    private int connectionTimeout = 3000;
+    private int socketTimeout = 10000;
+    private long connectionRequestTimeout = 10000;
+    private int maxConnectionsPerHost = 4;
+    private int maxTotalConnections = 50;
+    private volatile long idleConnectionTimeout = 30000;
+    private volatile long lastEviction;
+    private HttpClient httpClient;
+    private ThreadSafeClientConnManager connectionManager;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean acceptCompression = true;
+    private volatile long maxBodySize = 32 * 1024 * 1024;
+    private volatile boolean truncateOversizedBodies;
+    private volatile long requestDeadline = 60000;
+
     /** {@inheritDoc}*/
     @Override
     public String readPage(String url) throws PageReadException {
         LOG.info("Reading " + url);
-        HttpParams httpParameters = new BasicHttpParams();
-        // Set the timeout in milliseconds until a connection is established.
-        int timeoutConnection = 3000;
-        HttpConnectionParams.setConnectionTimeout(httpParameters, timeoutConnection);
-        // Set the default socket timeout (SO_TIMEOUT) 
-        // in milliseconds which is the timeout for waiting for data.
-        int timeoutSocket = 10000;
-        HttpConnectionParams.setSoTimeout(httpParameters, timeoutSocket);
-        DefaultHttpClient httpclient = new DefaultHttpClient(httpParameters);
-        HttpContext localContext = new BasicHttpContext();
-        HttpGet get = new HttpGet(url);
-        InputStream response = null;
-        HttpResponse httpResponse = null;
+        Exchange exchange = new Exchange(url);
+        boolean success = false;
+        try {
+            exchange.send();
+            if (!exchange.isOk()) {
+                success = true;
+                return null;
+            }
+            String content = readContent(exchange.body(), exchange.charset(), exchange.expectedLength());
+            success = true;
+            return content;
+        } catch (IOException e) {
+            throw exchange.failed(e);
+        } finally {
+            exchange.close(success);
+        }
+    }
+
+    /** {@inheritDoc}*/
+    @Override
+    public PageStream openPage(String url) throws PageReadException {
+        LOG.info("Opening " + url);
+        final Exchange exchange = new Exchange(url);
+        boolean success = false;
+        boolean handedOver = false;
+        try {
+            exchange.send();
+            if (!exchange.isOk()) {
+                success = true;
+                return null;
+            }
+            // closing the stream has to release the connection; the deadline runs until then.
+            InputStream content = new FilterInputStream(exchange.body()) {
+                @Override
+                public void close() throws IOException {
+                    exchange.close(true);
+                }
+            };
+            PageStream page = openContent(content, exchange.charset(), exchange.expectedLength());
+            handedOver = true;
+            return page;
+        } catch (IOException e) {
+            throw exchange.failed(e);
+        } finally {
+            if (!handedOver) {
+                exchange.close(success);
+            }
+        }
+    }
+
+    /** {@inheritDoc}*/
+    @Override
+    public CachedPage readPage(String url, CachedPage cached) throws PageReadException {
+        LOG.info("Revalidating " + url);
+        Exchange exchange = new Exchange(url);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                exchange.get.addHeader("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                exchange.get.addHeader("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        boolean success = false;
         try {
+            exchange.send();
+            if (cached != null && exchange.status() == HttpStatus.SC_NOT_MODIFIED) {
+                success = true;
+                return cached.revalidated(exchange.header("ETag"), exchange.header("Last-Modified"));
+            }
+            if (!exchange.isOk()) {
+                success = true;
+                return null;
+            }
+            byte[] bytes = PageDecoder.readBytes(exchange.body(), exchange.expectedLength());
+            Charset pageCharset = chooseCharset(bytes, exchange.charset());
+            success = true;
+            return new CachedPage(url, new String(bytes, pageCharset), pageCharset.name(),
+                                  exchange.header("ETag"), exchange.header("Last-Modified"),
+                                  System.currentTimeMillis());
+        } catch (IOException e) {
+            throw exchange.failed(e);
+        } finally {
+            exchange.close(success);
+        }
+    }
+
+    /**
+     * One request and its response. This applies the deadline, the content encoding and the body size limit,
+     * and gives the connection back to the pool when done with, or drops it if the response wasn't read
+     * cleanly.
+     */
+    private final class Exchange {
+        private final String url;
+        private final HttpGet get;
+        private HttpResponse response;
+        private ScheduledFuture<?> deadline;
+        private volatile boolean deadlineExpired;
+        private BoundedInputStream body;
+        private boolean closed;
+
+        Exchange(String url) {
+            this.url = url;
+            this.get = new HttpGet(url);
+            if (acceptCompression) {
+                get.addHeader("Accept-Encoding", "gzip, deflate");
+            }
+        }
+
+        void send() throws IOException {
+            if (requestDeadline > 0) {
+                deadline = getScheduler().schedule(new Runnable() {
+                    public void run() {
+                        deadlineExpired = true;
+                        get.abort();
+                    }
+                }, requestDeadline, TimeUnit.MILLISECONDS);
+            }
+            response = HttpPageReader.this.send(get);
+        }
+
+        int status() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        boolean isOk() {
+            int resp = status();
+            if (HttpStatus.SC_OK != resp) {
+                LOG.error("Download failed of " + url + " status " + resp + " " + response.getStatusLine().getReasonPhrase());
+                return false;
+            }
+            return true;
+        }
+
+        String header(String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        String charset() {
+            return EntityUtils.getContentCharSet(response.getEntity());
+        }
+
+        /*
+         * The length on the wire is no guide to the length of a compressed body, and a body that will be cut
+         * off doesn't need room for all of it.
+         */
+        long expectedLength() {
+            Header encoding = response.getEntity().getContentEncoding();
+            if (encoding != null && !"identity".equalsIgnoreCase(encoding.getValue())) {
+                return -1;
+            }
+            long length = response.getEntity().getContentLength();
+            return maxBodySize > 0 && length > maxBodySize ? maxBodySize : length;
+        }
+
+        InputStream body() throws IOException {
+            HttpEntity entity = response.getEntity();
+            InputStream content = entity.getContent();
+            Header encoding = entity.getContentEncoding();
+            if (encoding != null) {
+                String name = encoding.getValue().trim().toLowerCase();
+                if ("gzip".equals(name) || "x-gzip".equals(name)) {
+                    content = new GZIPInputStream(content);
+                } else if ("deflate".equals(name)) {
+                    content = inflate(content);
+                } else if (!"identity".equals(name)) {
+                    LOG.warn("Unknown content encoding " + name + " for " + url);
+                }
+            }
+            // the limit is on the decoded size, since that is what takes up the heap.
+            body = new BoundedInputStream(content, maxBodySize, truncateOversizedBodies);
+            return body;
+        }
+
+        PageReadException failed(IOException e) {
+            if (deadlineExpired) {
+                LOG.error("Download of " + url + " took longer than " + requestDeadline + "ms");
+                return new PageReadException("Deadline exceeded reading " + url, e);
+            }
+            LOG.error("Download failed of " + url, e);
+            return new PageReadException("Failed to read " + url, e);
+        }
+
+        /*
+         * If all went well, read what's left of the response so the connection can be used again; otherwise,
+         * or if the body was cut short, close the connection. The deadline still applies while draining.
+         */
+        void close(boolean success) {
+            if (closed) {
+                return;
+            }
+            closed = true;
             try {
-                httpResponse = httpclient.execute(get, localContext);
-                int resp = httpResponse.getStatusLine().getStatusCode();
-                if (HttpStatus.SC_OK != resp) {
-                    LOG.error("Download failed of " + url + " status " + resp + " " + httpResponse.getStatusLine().getReasonPhrase());
-                    return null;
+                if (response == null) {
+                    return;
+                }
+                if (success && (body == null || !body.isTruncated()) && response.getEntity() != null) {
+                    try {
+                        response.getEntity().consumeContent();
+                    } catch (IOException e) {
+                        get.abort();
+                    }
+                } else {
+                    get.abort();
                 }
-                String respCharset = EntityUtils.getContentCharSet(httpResponse.getEntity());
-                return readContent(httpResponse.getEntity().getContent(), respCharset);
             } finally {
-                if (response != null) {
-                    response.close();
+                if (deadline != null) {
+                    deadline.cancel(false);
                 }
-                if (httpResponse != null && httpResponse.getEntity() != null) {
-                    httpResponse.getEntity().consumeContent();
+            }
+        }
+    }
+
+    /*
+     * 'deflate' is supposed to mean zlib format, but some servers send raw deflate data. Tell them apart by
+     * the zlib header.
+     */
+    private static InputStream inflate(InputStream content) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(content, 2);
+        byte[] header = new byte[2];
+        int count = 0;
+        int read;
+        while (count < 2 && (read = pushback.read(header, count, 2 - count)) != -1) {
+            count += read;
+        }
+        pushback.unread(header, 0, count);
+        boolean zlib = count == 2 && (header[0] & 0x0f) == 8
+            && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib));
+    }
+
+    /**
+     * Counts what's read through it and stops at a limit, either by reporting the end of the stream or by
+     * failing.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private final long limit;
+        private final boolean truncate;
+        private long count;
+        private boolean truncated;
+
+        BoundedInputStream(InputStream in, long limit, boolean truncate) {
+            super(in);
+            this.limit = limit;
+            this.truncate = truncate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!allow()) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!allow()) {
+                return -1;
+            }
+            if (limit > 0) {
+                // read one past the limit, so that a body of exactly the limit isn't taken as too long.
+                len = (int)Math.min(len, limit + 1 - count);
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                if (limit > 0 && count > limit) {
+                    n -= (int)(count - limit);
+                    count = limit;
+                    tooLong();
+                    return n > 0 ? n : -1;
                 }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int)Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        private boolean allow() throws IOException {
+            if (truncated) {
+                return false;
+            }
+            if (limit > 0 && count >= limit) {
+                // see whether there is anything more.
+                int b = super.read();
+                if (b == -1) {
+                    return false;
+                }
+                tooLong();
+                return false;
+            }
+            return true;
+        }
 
+        private void tooLong() throws IOException {
+            if (!truncate) {
+                throw new IOException("Response body is longer than " + limit + " bytes");
             }
+            truncated = true;
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "http-page-reader-deadlines");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    private HttpResponse send(HttpGet get) throws IOException {
+        HttpClient httpclient = getClient();
+        evictIdleConnections(httpclient.getConnectionManager());
+        HttpContext localContext = new BasicHttpContext();
+        try {
+            return httpclient.execute(get, localContext);
         } catch (IOException e) {
-            LOG.error("Download failed of " + url, e);
-            throw new PageReadException("Failed to read " + url, e);
+            // don't leave a half-used connection in the pool.
+            get.abort();
+            throw e;
+        }
+    }
+
+    /*
+     * All the threads using this reader share one client, and so one pool of connections. It's made on first
+     * use, so that the settings can be changed until then.
+     */
+    private synchronized HttpClient getClient() {
+        if (httpClient == null) {
+            HttpParams httpParameters = new BasicHttpParams();
+            // Set the timeout in milliseconds until a connection is established.
+            HttpConnectionParams.setConnectionTimeout(httpParameters, connectionTimeout);
+            // Set the default socket timeout (SO_TIMEOUT) 
+            // in milliseconds which is the timeout for waiting for data.
+            HttpConnectionParams.setSoTimeout(httpParameters, socketTimeout);
+            // how long to wait for a connection from the pool when the limits are reached.
+            ConnManagerParams.setTimeout(httpParameters, connectionRequestTimeout);
+            ConnManagerParams.setMaxTotalConnections(httpParameters, maxTotalConnections);
+            ConnManagerParams.setMaxConnectionsPerRoute(httpParameters, new ConnPerRouteBean(maxConnectionsPerHost));
+            SchemeRegistry schemes = new SchemeRegistry();
+            schemes.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            schemes.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            connectionManager = new ThreadSafeClientConnManager(httpParameters, schemes);
+            httpClient = new DefaultHttpClient(connectionManager, httpParameters);
+            lastEviction = System.currentTimeMillis();
+        }
+        return httpClient;
+    }
+
+    /*
+     * Rather than run a thread to close idle connections, each request checks whether it's time to do it.
+     */
+    private void evictIdleConnections(ClientConnectionManager manager) {
+        long now = System.currentTimeMillis();
+        long last = lastEviction;
+        if (now - last >= idleConnectionTimeout / 2) {
+            lastEviction = now;
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Close all of the pooled connections. The reader can still be used afterwards; it will start a new pool.
+     */
+    public synchronized void shutdown() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+            httpClient = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
         }
     }
 
+    private synchronized void checkNotStarted() {
+        if (httpClient != null) {
+            throw new IllegalStateException("Connection settings can't be changed after the first request");
+        }
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * @param connectionTimeout milliseconds to wait for a connection to be established. The default is 3000.
+     */
+    public void setConnectionTimeout(int connectionTimeout) {
+        checkNotStarted();
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * @param socketTimeout milliseconds to wait for data on an open connection. The default is 10000.
+     */
+    public void setSocketTimeout(int socketTimeout) {
+        checkNotStarted();
+        this.socketTimeout = socketTimeout;
+    }
+
+    public long getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout milliseconds to wait for a free connection when the pool is at its limit.
+     *            The default is 10000.
+     */
+    public void setConnectionRequestTimeout(long connectionRequestTimeout) {
+        checkNotStarted();
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * @param maxConnectionsPerHost the most connections open to any one host. The default is 4.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        checkNotStarted();
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * @param maxTotalConnections the most connections open in all. The default is 50.
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        checkNotStarted();
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    public long getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * @param idleConnectionTimeout milliseconds a kept-alive connection may sit unused in the pool before it
+     *            is closed. The default is 30000.
+     */
+    public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    public boolean isAcceptCompression() {
+        return acceptCompression;
+    }
+
+    /**
+     * @param acceptCompression whether to ask for gzip or deflate transfer. The default is true.
+     */
+    public void setAcceptCompression(boolean acceptCompression) {
+        this.acceptCompression = acceptCompression;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * @param maxBodySize the most bytes of (decompressed) response body to take in, or 0 for no limit. The
+     *            default is 32MB.
+     */
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public boolean isTruncateOversizedBodies() {
+        return truncateOversizedBodies;
+    }
+
+    /**
+     * @param truncateOversizedBodies if true, a body longer than the maximum is cut off at the maximum and the
+     *            rest is used; if false (the default), the read fails.
+     */
+    public void setTruncateOversizedBodies(boolean truncateOversizedBodies) {
+        this.truncateOversizedBodies = truncateOversizedBodies;
+    }
+
+    public long getRequestDeadline() {
+        return requestDeadline;
+    }
+
+    /**
+     * @param requestDeadline milliseconds that a whole request, from sending it to reading the last of the
+     *            body, may take, or 0 for no limit. The socket timeout only limits each wait for data, so a
+     *            server that sends a little at a time could otherwise hold a thread indefinitely. The default
+     *            is 60000.
+     */
+    public void setRequestDeadline(long requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
 }
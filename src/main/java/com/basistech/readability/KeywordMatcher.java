@@ -0,0 +1,191 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton over several groups of keywords. One pass over a string reports, as a bit mask,
+ * every group that has a keyword somewhere in it; group i sets bit i. This is what a set of regexes of the
+ * form (a|b|c) with CASE_INSENSITIVE reports through find(), without running each regex separately.
+ * <p>
+ * Case is folded the way Pattern.CASE_INSENSITIVE does it without UNICODE_CASE: for US-ASCII letters only.
+ * The keywords themselves must be ASCII. The automaton is a dense transition table over the characters that
+ * occur in the keywords, plus one class for everything else, so it is immutable and safe to share.
+ */
+final class KeywordMatcher {
+    private static final int ASCII = 128;
+    private static final int MAX_GROUPS = 32;
+
+    /* character -> column of the transition table; 0 is 'any other character' */
+    private final int[] charClass;
+    private final int classes;
+    /* transitions with the failure links already folded in: next state = delta[state * classes + class] */
+    private final int[] delta;
+    /* groups matched on arriving in a state, including those of its failure chain */
+    private final int[] output;
+    /* groups of the keywords that end exactly at this state, for whole-string matches */
+    private final int[] terminal;
+    /* length of the prefix a state stands for */
+    private final int[] depth;
+
+    /**
+     * @param groups keywords by group; group i is reported as bit i.
+     */
+    KeywordMatcher(String[]... groups) {
+        if (groups.length > MAX_GROUPS) {
+            throw new IllegalArgumentException("At most " + MAX_GROUPS + " keyword groups");
+        }
+        charClass = new int[ASCII];
+        int nextClass = 1;
+        for (String[] group : groups) {
+            for (String keyword : group) {
+                if (keyword.length() == 0) {
+                    throw new IllegalArgumentException("Empty keyword");
+                }
+                for (int i = 0; i < keyword.length(); i++) {
+                    char c = fold(keyword.charAt(i));
+                    if (c >= ASCII) {
+                        throw new IllegalArgumentException("Non-ASCII keyword " + keyword);
+                    }
+                    if (charClass[c] == 0) {
+                        charClass[c] = nextClass++;
+                    }
+                }
+            }
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            charClass[c - 'a' + 'A'] = charClass[c];
+        }
+        classes = nextClass;
+
+        /* the trie; -1 is no edge */
+        List<int[]> edges = new ArrayList<int[]>();
+        edges.add(newRow());
+        int[] terminalBuild = new int[16];
+        int[] depthBuild = new int[16];
+        for (int g = 0; g < groups.length; g++) {
+            for (String keyword : groups[g]) {
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int cls = charClass[keyword.charAt(i)];
+                    int next = edges.get(state)[cls];
+                    if (next < 0) {
+                        next = edges.size();
+                        edges.add(newRow());
+                        edges.get(state)[cls] = next;
+                        if (next >= depthBuild.length) {
+                            depthBuild = Arrays.copyOf(depthBuild, next * 2);
+                            terminalBuild = Arrays.copyOf(terminalBuild, next * 2);
+                        }
+                        depthBuild[next] = i + 1;
+                    }
+                    state = next;
+                }
+                terminalBuild[state] |= 1 << g;
+            }
+        }
+        int states = edges.size();
+        terminal = Arrays.copyOf(terminalBuild, states);
+        depth = Arrays.copyOf(depthBuild, states);
+        output = Arrays.copyOf(terminalBuild, states);
+        delta = new int[states * classes];
+
+        /* breadth first, so that the failure target of a state is complete before the state itself */
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        int[] rootEdges = edges.get(0);
+        for (int cls = 0; cls < classes; cls++) {
+            int next = rootEdges[cls];
+            if (next < 0) {
+                delta[cls] = 0;
+            } else {
+                delta[cls] = next;
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            output[state] |= output[failure[state]];
+            int[] stateEdges = edges.get(state);
+            for (int cls = 0; cls < classes; cls++) {
+                int next = stateEdges[cls];
+                int fallback = delta[failure[state] * classes + cls];
+                if (next < 0) {
+                    delta[state * classes + cls] = fallback;
+                } else {
+                    delta[state * classes + cls] = next;
+                    failure[next] = fallback;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[classes];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /**
+     * @return the groups that have a keyword anywhere in the string.
+     */
+    int find(CharSequence text) {
+        int state = 0;
+        int found = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            state = delta[state * classes + (c < ASCII ? charClass[c] : 0)];
+            found |= output[state];
+        }
+        return found;
+    }
+
+    /**
+     * @return the groups that have a keyword equal to the whole string.
+     */
+    int matchWhole(CharSequence text) {
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= ASCII || charClass[c] == 0) {
+                return 0;
+            }
+            int next = delta[state * classes + charClass[c]];
+            /* a trie edge always leads one level deeper; a failure link never does */
+            if (depth[next] != i + 1) {
+                return 0;
+            }
+            state = next;
+        }
+        return terminal[state];
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of durations, good for percentiles over any number of samples. Each power
+ * of two is split into four equal buckets, so a percentile is off by at most 25%.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    // 2^40 ns is about 18 minutes; anything longer goes in the last bucket.
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketFor(nanos));
+        total.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long maxNanos() {
+        return maxNanos.get();
+    }
+
+    double meanNanos() {
+        long n = total.get();
+        return n == 0 ? 0 : (double)totalNanos.get() / n;
+    }
+
+    /**
+     * @param fraction for example 0.99 for the 99th percentile.
+     * @return the upper bound of the bucket holding the percentile, or 0 if there are no samples.
+     */
+    long percentileNanos(double fraction) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(fraction * n);
+        long seen = 0;
+        for (int bucket = 0; bucket <= BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    private static int bucketFor(long nanos) {
+        if (nanos < 1) {
+            return 0;
+        }
+        // whole powers of two from the leading bit, quarters from the next two bits.
+        int log2 = 63 - Long.numberOfLeadingZeros(nanos);
+        int fraction = log2 >= 2 ? (int)((nanos >>> (log2 - 2)) & 3) : 0;
+        int bucket = log2 * SUB_BUCKETS + fraction;
+        return Math.min(bucket, BUCKETS);
+    }
+
+    private static long upperBound(int bucket) {
+        int log2 = bucket / SUB_BUCKETS;
+        int fraction = bucket % SUB_BUCKETS;
+        if (log2 < 2) {
+            // too small to split; the bucket holds the whole power of two.
+            return 2L << log2;
+        }
+        return (1L << log2) + ((fraction + 1L) << log2) / SUB_BUCKETS;
+    }
+
+    /**
+     * @return count, mean, p50/p95/p99 and max in milliseconds.
+     */
+    String summarize() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", count(),
+                             meanNanos() / 1e6, percentileNanos(0.50) / 1e6, percentileNanos(0.95) / 1e6,
+                             percentileNanos(0.99) / 1e6, maxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,377 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A charset detector that tries the cheap, certain answers before falling back to statistical detection.
+ * In order:
+ * <ol>
+ * <li>a byte order mark;</li>
+ * <li>a meta charset or http-equiv content-type declaration in the first few KB of the page;</li>
+ * <li>strict UTF-8 validity of the first 64KB of the page (which includes pure ASCII);</li>
+ * <li>the fallback detector (by default {@link TikaCharsetDetector}), given only a bounded prefix of the
+ * page.</li>
+ * </ol>
+ * The statistical detectors cost time in proportion to what they are given, and they don't get much better
+ * after the first few KB. The UTF-8 check looks at the same 64KB whether the reader hands over the whole page
+ * (readPage in {@link HttpPageReader} and {@link FilePageReader}) or only its first 64KB (the buffer readers,
+ * and {@link StreamPageReader#openPage(String)}), so a page's charset doesn't depend on how it was read.
+ */
+public class LayeredCharsetDetector implements PageCharsetDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(LayeredCharsetDetector.class);
+    private static final int DEFAULT_META_SCAN_LIMIT = 4096;
+    private static final int DEFAULT_FALLBACK_LIMIT = 16 * 1024;
+    private static final int DEFAULT_UTF8_CHECK_LIMIT = AbstractPageReader.DETECTION_PREFIX;
+    private static final String UTF_8 = "UTF-8";
+    private static final byte[] META = {'<', 'm', 'e', 't', 'a'};
+
+    private final PageCharsetDetector fallback;
+    private int metaScanLimit = DEFAULT_META_SCAN_LIMIT;
+    private int fallbackLimit = DEFAULT_FALLBACK_LIMIT;
+    private int utf8CheckLimit = DEFAULT_UTF8_CHECK_LIMIT;
+
+    public LayeredCharsetDetector() {
+        this(new TikaCharsetDetector());
+    }
+
+    /**
+     * @param fallback the detector to use when nothing in the page settles the question.
+     */
+    public LayeredCharsetDetector(PageCharsetDetector fallback) {
+        this.fallback = fallback;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String detect(byte[] data, String hint) {
+        String charset = detectBom(data);
+        if (charset != null) {
+            return charset;
+        }
+        charset = scanMeta(data, Math.min(data.length, metaScanLimit));
+        if (charset != null) {
+            return charset;
+        }
+        if (isStrictUtf8(data, Math.min(data.length, utf8CheckLimit))) {
+            return UTF_8;
+        }
+        byte[] prefix = data.length <= fallbackLimit ? data : Arrays.copyOf(data, fallbackLimit);
+        return fallback.detect(prefix, hint);
+    }
+
+    static String detectBom(byte[] data) {
+        if (data.length >= 3 && (data[0] & 0xff) == 0xef && (data[1] & 0xff) == 0xbb && (data[2] & 0xff) == 0xbf) {
+            return UTF_8;
+        }
+        if (data.length >= 4 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xfe && data[2] == 0
+            && data[3] == 0) {
+            return "UTF-32LE";
+        }
+        if (data.length >= 4 && data[0] == 0 && data[1] == 0 && (data[2] & 0xff) == 0xfe
+            && (data[3] & 0xff) == 0xff) {
+            return "UTF-32BE";
+        }
+        if (data.length >= 2 && (data[0] & 0xff) == 0xfe && (data[1] & 0xff) == 0xff) {
+            return "UTF-16BE";
+        }
+        if (data.length >= 2 && (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xfe) {
+            return "UTF-16LE";
+        }
+        return null;
+    }
+
+    /*
+     * A cut-down version of the HTML5 prescan: find each <meta, read its attributes, and take charset=, or the
+     * charset= inside content= when http-equiv is content-type. Comments are skipped.
+     */
+    static String scanMeta(byte[] data, int limit) {
+        int pos = 0;
+        while (pos < limit) {
+            if (data[pos] != '<') {
+                pos++;
+                continue;
+            }
+            if (startsWith(data, pos, limit, "<!--")) {
+                int end = indexOf(data, pos + 4, limit, "-->");
+                if (end == -1) {
+                    return null;
+                }
+                pos = end + 3;
+                continue;
+            }
+            if (!startsWithIgnoreCase(data, pos, limit, META) || pos + META.length >= limit
+                || !isSpaceOrSlash(data[pos + META.length])) {
+                pos++;
+                continue;
+            }
+            pos += META.length;
+            String charset = null;
+            String content = null;
+            boolean httpEquivContentType = false;
+            while (pos < limit && data[pos] != '>') {
+                // one attribute: name, and maybe = and a value.
+                while (pos < limit && isSpaceOrSlash(data[pos])) {
+                    pos++;
+                }
+                int nameStart = pos;
+                while (pos < limit && data[pos] != '=' && data[pos] != '>' && !isSpaceOrSlash(data[pos])) {
+                    pos++;
+                }
+                String name = ascii(data, nameStart, pos).toLowerCase();
+                while (pos < limit && isSpace(data[pos])) {
+                    pos++;
+                }
+                String value = "";
+                if (pos < limit && data[pos] == '=') {
+                    pos++;
+                    while (pos < limit && isSpace(data[pos])) {
+                        pos++;
+                    }
+                    if (pos < limit && (data[pos] == '"' || data[pos] == '\'')) {
+                        byte quote = data[pos++];
+                        int valueStart = pos;
+                        while (pos < limit && data[pos] != quote) {
+                            pos++;
+                        }
+                        value = ascii(data, valueStart, pos);
+                        pos++;
+                    } else {
+                        int valueStart = pos;
+                        while (pos < limit && data[pos] != '>' && !isSpace(data[pos])) {
+                            pos++;
+                        }
+                        value = ascii(data, valueStart, pos);
+                    }
+                }
+                if ("charset".equals(name)) {
+                    charset = value;
+                } else if ("content".equals(name)) {
+                    content = value;
+                } else if ("http-equiv".equals(name)) {
+                    httpEquivContentType = "content-type".equalsIgnoreCase(value.trim());
+                }
+            }
+            if (charset == null && httpEquivContentType && content != null) {
+                charset = charsetFromContentType(content);
+            }
+            charset = supported(charset);
+            if (charset != null) {
+                return charset;
+            }
+        }
+        return null;
+    }
+
+    private static String charsetFromContentType(String content) {
+        int index = content.toLowerCase().indexOf("charset");
+        if (index == -1) {
+            return null;
+        }
+        int pos = index + "charset".length();
+        while (pos < content.length() && Character.isWhitespace(content.charAt(pos))) {
+            pos++;
+        }
+        if (pos >= content.length() || content.charAt(pos) != '=') {
+            return null;
+        }
+        pos++;
+        while (pos < content.length() && Character.isWhitespace(content.charAt(pos))) {
+            pos++;
+        }
+        int end = pos;
+        while (end < content.length() && content.charAt(end) != ';' && content.charAt(end) != '"'
+            && content.charAt(end) != '\'' && !Character.isWhitespace(content.charAt(end))) {
+            end++;
+        }
+        if (pos < content.length() && (content.charAt(pos) == '"' || content.charAt(pos) == '\'')) {
+            pos++;
+            end = pos;
+            while (end < content.length() && content.charAt(end) != content.charAt(pos - 1)) {
+                end++;
+            }
+        }
+        return content.substring(pos, end);
+    }
+
+    /*
+     * If the page could be read as ASCII to find the declaration, it can't really be UTF-16; HTML5 says to
+     * take UTF-8 in that case.
+     */
+    private static String supported(String charset) {
+        if (charset == null) {
+            return null;
+        }
+        charset = charset.trim();
+        if (charset.length() == 0) {
+            return null;
+        }
+        if (charset.toUpperCase().startsWith("UTF-16")) {
+            return UTF_8;
+        }
+        try {
+            if (Charset.isSupported(charset)) {
+                return charset;
+            }
+        } catch (IllegalArgumentException e) {
+            // an illegal name.
+        }
+        LOG.debug("Ignoring declared charset " + charset);
+        return null;
+    }
+
+    /**
+     * @param length how many bytes from the start to check.
+     * @return true if the bytes are well-formed UTF-8: no overlong forms, no surrogates, nothing past U+10FFFF.
+     *         A sequence cut off at the length is allowed, since we may only have a prefix of the page.
+     */
+    static boolean isStrictUtf8(byte[] data, int length) {
+        int pos = 0;
+        while (pos < length) {
+            int b = data[pos] & 0xff;
+            if (b < 0x80) {
+                pos++;
+                continue;
+            }
+            int trailing;
+            int min;
+            if (b >= 0xc2 && b <= 0xdf) {
+                trailing = 1;
+                min = 0x80;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                trailing = 2;
+                min = 0x800;
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                trailing = 3;
+                min = 0x10000;
+            } else {
+                return false;
+            }
+            int codePoint = b & (0x3f >> trailing);
+            for (int x = 1; x <= trailing; x++) {
+                if (pos + x >= length) {
+                    return true;
+                }
+                int next = data[pos + x] & 0xff;
+                if ((next & 0xc0) != 0x80) {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3f);
+            }
+            if (codePoint < min || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+                return false;
+            }
+            pos += trailing + 1;
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isSpaceOrSlash(byte b) {
+        return b == '/' || isSpace(b);
+    }
+
+    private static boolean startsWith(byte[] data, int pos, int limit, String prefix) {
+        if (pos + prefix.length() > limit) {
+            return false;
+        }
+        for (int x = 0; x < prefix.length(); x++) {
+            if (data[pos + x] != prefix.charAt(x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] data, int pos, int limit, byte[] lowerPrefix) {
+        if (pos + lowerPrefix.length > limit) {
+            return false;
+        }
+        for (int x = 0; x < lowerPrefix.length; x++) {
+            int b = data[pos + x];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != lowerPrefix[x]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] data, int from, int limit, String target) {
+        for (int pos = from; pos + target.length() <= limit; pos++) {
+            if (startsWith(data, pos, limit, target)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static String ascii(byte[] data, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int x = start; x < end; x++) {
+            chars[x - start] = (char)(data[x] & 0xff);
+        }
+        return new String(chars);
+    }
+
+    public int getMetaScanLimit() {
+        return metaScanLimit;
+    }
+
+    /**
+     * @param metaScanLimit how many bytes at the start of the page to search for a meta declaration.
+     */
+    public void setMetaScanLimit(int metaScanLimit) {
+        this.metaScanLimit = metaScanLimit;
+    }
+
+    public int getFallbackLimit() {
+        return fallbackLimit;
+    }
+
+    /**
+     * @param fallbackLimit at most this many bytes from the start of the page go to the fallback detector.
+     */
+    public void setFallbackLimit(int fallbackLimit) {
+        this.fallbackLimit = fallbackLimit;
+    }
+
+    public int getUtf8CheckLimit() {
+        return utf8CheckLimit;
+    }
+
+    /**
+     * @param utf8CheckLimit how many bytes at the start of the page have to be valid UTF-8 for it to be taken
+     *            as UTF-8. Stream and buffer readers give a detector no more than 64KB, so a bigger limit only
+     *            makes a difference for pages read whole.
+     */
+    public void setUtf8CheckLimit(int utf8CheckLimit) {
+        this.utf8CheckLimit = utf8CheckLimit;
+    }
+}
@@ -27,6 +27,7 @@ import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
 import org.cyberneko.html.parsers.SAXParser;
@@ -42,6 +43,10 @@ import org.slf4j.LoggerFactory;
  */
 public class NekoJsoupParser {
     private static final Logger LOG = LoggerFactory.getLogger(NekoJsoupParser.class);
+    private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+    private boolean pruneBoilerplate;
+    private boolean stripUnlikelyCandidates;
 
     public NekoJsoupParser() {
         //
@@ -112,12 +117,101 @@ public class NekoJsoupParser {
         }
     }
 
+    /**
+     * Does the document preparation that Readability does right after the parse while the parse is still
+     * going on, so that the elements it would delete are never built. Scripts (other than readability's own
+     * and typekit), styles and stylesheet links are dropped along with their content, font becomes span and
+     * noscript becomes div, both without attributes. Optionally, elements that grabArticle would strip as
+     * unlikely candidates are dropped too.
+     */
+    private final class PruningHandler extends Handler {
+        // the depth of the element we are skipping, or 0 when not skipping.
+        private int skipDepth;
+        private int nesting;
+
+        PruningHandler(Document document) {
+            super(document);
+        }
+
+        @Override
+        public void characters(char[] data, int start, int length) throws SAXException {
+            if (skipDepth == 0) {
+                super.characters(data, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qname) throws SAXException {
+            if (skipDepth == 0) {
+                super.endElement(uri, localName, qname);
+            } else if (skipDepth == nesting) {
+                skipDepth = 0;
+            }
+            nesting--;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qname, Attributes attrs)
+            throws SAXException {
+            nesting++;
+            if (skipDepth != 0) {
+                return;
+            }
+            String tagName = localName.toLowerCase();
+            if (isBoilerplate(tagName, attrs)) {
+                skipDepth = nesting;
+                return;
+            }
+            /*
+             * Built without their attributes, as changeElementTag would have left them; a font's face or
+             * color must not survive as attributes of a span.
+             */
+            if ("font".equals(tagName)) {
+                super.startElement(uri, "span", qname, NO_ATTRIBUTES);
+            } else if ("noscript".equals(tagName)) {
+                super.startElement(uri, "div", qname, NO_ATTRIBUTES);
+            } else {
+                super.startElement(uri, tagName, qname, attrs);
+            }
+        }
+
+        private boolean isBoilerplate(String tagName, Attributes attrs) {
+            if ("script".equals(tagName)) {
+                String src = attrs.getValue("src");
+                return src == null || "".equals(src)
+                    || (src.indexOf("readability") == -1 && src.indexOf("typekit") == -1);
+            }
+            if ("style".equals(tagName)) {
+                return true;
+            }
+            if ("link".equals(tagName)) {
+                return "stylesheet".equalsIgnoreCase(attrs.getValue("rel"));
+            }
+            if (stripUnlikelyCandidates && !"body".equals(tagName) && !"html".equals(tagName)) {
+                String className = attrs.getValue("class");
+                String id = attrs.getValue("id");
+                String unlikelyMatchString = (className == null ? "" : className) + (id == null ? "" : id);
+                int matched = Patterns.classify(unlikelyMatchString);
+                if ((matched & Patterns.UNLIKELY_CANDIDATES_BIT) != 0
+                    && (matched & Patterns.OK_MAYBE_ITS_A_CANDIDATE_BIT) == 0) {
+                    LOG.debug("Pruning unlikely candidate - " + unlikelyMatchString);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private Handler newHandler(Document document) {
+        return pruneBoilerplate ? new PruningHandler(document) : new Handler(document);
+    }
+
     public Document parse(InputStream data, String baseUri) throws SAXException, IOException {
         InputSource source = new InputSource();
         source.setByteStream(data);
         SAXParser nekoParser = new SAXParser();
         Document document = new Document(baseUri);
-        nekoParser.setContentHandler(new Handler(document));
+        nekoParser.setContentHandler(newHandler(document));
         nekoParser.setErrorHandler(new LocalErrorHandler());
         nekoParser.parse(source);
         return document;
@@ -128,7 +222,7 @@ public class NekoJsoupParser {
         source.setCharacterStream(new StringReader(data));
         SAXParser nekoParser = new SAXParser();
         Document document = new Document(baseUri);
-        nekoParser.setContentHandler(new Handler(document));
+        nekoParser.setContentHandler(newHandler(document));
         nekoParser.setErrorHandler(new LocalErrorHandler());
         nekoParser.parse(source);
         return document;
@@ -137,4 +231,30 @@ public class NekoJsoupParser {
     public Document parse(String data) throws SAXException, IOException {
 	return Jsoup.parse(data);
     }
+
+    public boolean isPruneBoilerplate() {
+        return pruneBoilerplate;
+    }
+
+    /**
+     * @param pruneBoilerplate if true, scripts, styles and stylesheet links are left out of the document as
+     *            it is built, font elements are built as span and noscript elements as div, without
+     *            attributes.
+     */
+    public void setPruneBoilerplate(boolean pruneBoilerplate) {
+        this.pruneBoilerplate = pruneBoilerplate;
+    }
+
+    public boolean isStripUnlikelyCandidates() {
+        return stripUnlikelyCandidates;
+    }
+
+    /**
+     * @param stripUnlikelyCandidates if true, and boilerplate is being pruned, elements whose class and id
+     *            look like comments, sidebars, footers and so on are left out as well. That saves building
+     *            them, but it means that a retry of the extraction without stripping can't get them back.
+     */
+    public void setStripUnlikelyCandidates(boolean stripUnlikelyCandidates) {
+        this.stripUnlikelyCandidates = stripUnlikelyCandidates;
+    }
 }
@@ -0,0 +1,184 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.apache.tika.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A page reader for local corpora that reads through NIO channels instead of copying each page into a heap
+ * byte array. Files of at least {@link #setMapThreshold(int) the map threshold} are memory-mapped; smaller
+ * ones are read into a direct buffer that each thread keeps for the next page. Only the first part of the
+ * page is copied out for charset detection; the rest is decoded straight from the buffer.
+ * <p>
+ * Unlike {@link FilePageReader}, which only looks at the last segment of the url, this resolves the whole
+ * path, so pages can live in a tree of directories. Absolute paths and file: urls are used as they are;
+ * relative paths, and relative file: urls such as file:page.html, are resolved against the base directory;
+ * for other urls, the path (and query) of the url is resolved against the base directory, as for a mirrored
+ * crawl.
+ */
+public class NioFilePageReader extends AbstractPageReader implements StreamPageReader {
+    private static final Logger LOG = LoggerFactory.getLogger(NioFilePageReader.class);
+    private static final int DEFAULT_MAP_THRESHOLD = 1024 * 1024;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private File baseDirectory;
+    private int mapThreshold = DEFAULT_MAP_THRESHOLD;
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+    /** {@inheritDoc} */
+    @Override
+    public String readPage(String url) throws PageReadException {
+        File file = resolve(url);
+        LOG.info("Reading " + file + " for " + url);
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            ByteBuffer data;
+            if (size >= mapThreshold) {
+                // the mapping stays valid after the channel is closed, and goes away when the buffer is collected.
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                data = readIntoBuffer(channel, (int)size);
+            }
+            return readContent(data, null);
+        } catch (IOException e) {
+            throw new PageReadException("Failed to read " + url, e);
+        } finally {
+            if (fis != null) {
+                IOUtils.closeQuietly(fis);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PageStream openPage(String url) throws PageReadException {
+        File file = resolve(url);
+        LOG.info("Opening " + file + " for " + url);
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            PageStream page = openContent(Channels.newInputStream(channel), null, channel.size());
+            fis = null;
+            return page;
+        } catch (IOException e) {
+            throw new PageReadException("Failed to read " + url, e);
+        } finally {
+            if (fis != null) {
+                IOUtils.closeQuietly(fis);
+            }
+        }
+    }
+
+    /*
+     * Read the whole channel into this thread's buffer, growing it if need be. The channel's size is only a
+     * hint, in case the file changes underneath us.
+     */
+    private ByteBuffer readIntoBuffer(FileChannel channel, int size) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null || buffer.capacity() < size + 1) {
+            buffer = ByteBuffer.allocateDirect(Math.max(INITIAL_BUFFER, Integer.highestOneBit(size) << 1));
+            buffers.set(buffer);
+        }
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+                buffers.set(buffer);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    File resolve(String url) {
+        if (url.startsWith("file:")) {
+            try {
+                URI uri = new URI(url);
+                if (uri.isOpaque()) {
+                    // file:page.html, which new File(URI) won't take; relative, like a plain path.
+                    String path = uri.getSchemeSpecificPart();
+                    return baseDirectory == null ? new File(path) : new File(baseDirectory, path);
+                }
+                return new File(uri);
+            } catch (URISyntaxException e) {
+                // fall through and treat it as a path.
+            } catch (IllegalArgumentException e) {
+                // likewise.
+            }
+        }
+        File file = new File(url);
+        if (file.isAbsolute() || baseDirectory == null) {
+            return file;
+        }
+        int colon = url.indexOf(':');
+        int slash = url.indexOf('/');
+        if (colon > 1 && (slash == -1 || colon < slash)) {
+            // some other scheme, e.g. a next page link on a page from a mirrored site.
+            try {
+                URI uri = new URI(url);
+                String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+                if (uri.getRawQuery() != null) {
+                    path = path + "?" + uri.getRawQuery();
+                }
+                return new File(baseDirectory, path);
+            } catch (URISyntaxException e) {
+                // not a url after all.
+            }
+        }
+        return new File(baseDirectory, url);
+    }
+
+    public void setBaseDirectory(File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+    }
+
+    public File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    public int getMapThreshold() {
+        return mapThreshold;
+    }
+
+    /**
+     * @param mapThreshold files of at least this many bytes are memory-mapped; smaller ones are read into a
+     *            reused direct buffer. Mapping has a fixed cost, so it only pays for large files.
+     */
+    public void setMapThreshold(int mapThreshold) {
+        this.mapThreshold = mapThreshold;
+    }
+}
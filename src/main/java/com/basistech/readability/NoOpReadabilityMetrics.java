@@ -0,0 +1,43 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+/**
+ * Metrics that go nowhere, the default. Extend it to pick out only the calls you care about.
+ */
+public class NoOpReadabilityMetrics implements ReadabilityMetrics {
+    public static final NoOpReadabilityMetrics INSTANCE = new NoOpReadabilityMetrics();
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordTime(Stage stage, long nanos) {
+        //
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void recordPass(int pass, long nanos, boolean foundArticle) {
+        //
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void increment(Counter counter, long amount) {
+        //
+    }
+}
@@ -0,0 +1,193 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.jsoup.nodes.TextNode;
+
+/**
+ * The ranges of PC-data that an {@link XmlDataMap} has made, in order, kept in parallel arrays: the start and
+ * end of each range and the text node it came from, which is null for text that was added (the period at the
+ * end of a sentence, for example). Ranges never overlap, but there can be gaps between them.
+ * <p>
+ * Ranges are addressed by their index. {@link #indexOf(int)} finds the range that holds an offset with a
+ * binary search, so lookups can come in any order.
+ * <p>
+ * {@link #readOnlyView()} gives a copy that cannot be changed and can be handed to other threads. It shares
+ * the arrays until this index is changed again, at which point this index makes its own copy. The text nodes
+ * themselves are shared, so splitting a range still shortens the text of the node the view sees.
+ */
+public final class OffsetIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] starts;
+    private int[] ends;
+    private TextNode[] texts;
+    private int size;
+    private final boolean readOnly;
+    // true while a read-only view refers to the arrays.
+    private boolean shared;
+
+    OffsetIndex() {
+        this(new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], new TextNode[INITIAL_CAPACITY], 0, false);
+    }
+
+    private OffsetIndex(int[] starts, int[] ends, TextNode[] texts, int size, boolean readOnly) {
+        this.starts = starts;
+        this.ends = ends;
+        this.texts = texts;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * @return the number of ranges.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * @return the text node for the range, or null if the range is for text that was added.
+     */
+    public TextNode getText(int index) {
+        checkIndex(index);
+        return texts[index];
+    }
+
+    /**
+     * @return the index of the range that holds the offset, or -1 if no range does.
+     */
+    public int indexOf(int offset) {
+        // the last range that starts at or before the offset. A range with nothing in it can start where the
+        // next one does, but never after, so this skips it.
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 && offset < ends[found] ? found : -1;
+    }
+
+    /**
+     * @return the range at the index. The range is a copy; changing it does not change the index.
+     */
+    public OffsetRange getRange(int index) {
+        checkIndex(index);
+        return new OffsetRange(starts[index], ends[index], texts[index]);
+    }
+
+    /**
+     * @return the ranges as an unmodifiable list, which follows changes to this index.
+     */
+    public List<OffsetRange> asList() {
+        return new RangeList();
+    }
+
+    /**
+     * @return an index with the ranges as they are now, which cannot be changed.
+     */
+    public OffsetIndex readOnlyView() {
+        if (readOnly) {
+            return this;
+        }
+        shared = true;
+        return new OffsetIndex(starts, ends, texts, size, true);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    void add(int start, int end, TextNode text) {
+        prepareForChange(size + 1);
+        starts[size] = start;
+        ends[size] = end;
+        texts[size] = text;
+        size++;
+    }
+
+    /**
+     * Cut the range at the index in two at offset, the second half going to the given node.
+     */
+    void split(int index, int offset, TextNode secondText) {
+        checkIndex(index);
+        prepareForChange(size + 1);
+        int moved = size - index - 1;
+        System.arraycopy(starts, index + 1, starts, index + 2, moved);
+        System.arraycopy(ends, index + 1, ends, index + 2, moved);
+        System.arraycopy(texts, index + 1, texts, index + 2, moved);
+        starts[index + 1] = offset;
+        ends[index + 1] = ends[index];
+        texts[index + 1] = secondText;
+        ends[index] = offset;
+        size++;
+    }
+
+    private void prepareForChange(int needed) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Read-only offset index");
+        }
+        if (needed > starts.length || shared) {
+            int capacity = Math.max(needed, shared ? starts.length : starts.length * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            shared = false;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Range " + index + " of " + size);
+        }
+    }
+
+    private final class RangeList extends AbstractList<OffsetRange> implements RandomAccess {
+        @Override
+        public OffsetRange get(int index) {
+            return getRange(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Gets page bytes into the one String that jsoup parses with as little copying as possible. Reading through
+ * a ByteArrayOutputStream and then decoding costs a buffer for every doubling, a trimmed copy, and then the
+ * decode; when the size is known up front we read straight into an array of that size, and when the caller
+ * has a stream with a known charset we decode as we read.
+ */
+final class PageDecoder {
+    private static final int DEFAULT_BUFFER = 8192;
+    private static final int MAX_INITIAL_BUFFER = 16 * 1024 * 1024;
+
+    private PageDecoder() {
+        //
+    }
+
+    /**
+     * Read all of a stream.
+     *
+     * @param expectedLength the length of the content if known, or a negative number. This is only a hint; a
+     *            wrong value costs a copy, not correctness.
+     */
+    static byte[] readBytes(InputStream input, long expectedLength) throws IOException {
+        byte[] buffer = new byte[expectedLength > 0 && expectedLength < Integer.MAX_VALUE - 8
+            ? (int)expectedLength : DEFAULT_BUFFER];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // an accurate hint lands here with the whole content; check for more before growing.
+                int next = input.read();
+                if (next == -1) {
+                    return buffer;
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                buffer[length++] = (byte)next;
+            }
+            int count = input.read(buffer, length, buffer.length - length);
+            if (count == -1) {
+                break;
+            }
+            length += count;
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Decode a buffer without disturbing its position. Malformed input is replaced, as new String does.
+     */
+    static String decode(ByteBuffer data, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        try {
+            CharBuffer chars = decoder.decode(data.duplicate());
+            return new String(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        } catch (IOException e) {
+            // with REPLACE this does not happen.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode a stream as it is read.
+     *
+     * @param sizeHint a guess at the number of characters, or a negative number. A length in bytes will do:
+     *            it is at least the number of characters in UTF-8 and the single-byte charsets, and at most
+     *            twice it in UTF-16. The first buffer is capped, so a wild guess can't allocate much.
+     */
+    static String decode(InputStream input, Charset charset, int sizeHint) throws IOException {
+        Reader reader = new InputStreamReader(input, charset);
+        // one more than the hint, so that when it's exact the read that finds the end doesn't grow the buffer.
+        char[] buffer = new char[sizeHint > 0 ? Math.min(sizeHint, MAX_INITIAL_BUFFER) + 1 : DEFAULT_BUFFER];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int count = reader.read(buffer, length, buffer.length - length);
+            if (count == -1) {
+                break;
+            }
+            length += count;
+        }
+        return new String(buffer, 0, length);
+    }
+}
@@ -0,0 +1,33 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+
+/**
+ * Told about each page of an article as it is added, when reading all pages. Returning false stops the
+ * extraction after that page; the pages so far make up the result, and its next-page link is the page that
+ * would have been read next, if any.
+ */
+public interface PageListener {
+    /**
+     * @param page the page just added.
+     * @param pageNumber its position in the article, counting from 1.
+     * @return true to go on to the next page, false to stop here.
+     */
+    boolean pageAdded(ArticlePage page, int pageNumber);
+}
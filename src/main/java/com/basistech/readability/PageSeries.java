@@ -0,0 +1,112 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.Collection;
+import java.util.regex.Matcher;
+
+/**
+ * A run of pages whose urls differ only by a page number, like ?page=2, ?page=3, ... or /page/2/, /page/3/.
+ * When the next-page link is one of these, and at least one other link on the page fits the same pattern with
+ * a different number, we can guess the urls of all of the following pages without reading each page first.
+ */
+final class PageSeries {
+    private final String prefix;
+    private final String suffix;
+    private final int first;
+
+    private PageSeries(String prefix, String suffix, int first) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.first = first;
+    }
+
+    /**
+     * @param nextHref the chosen next-page link.
+     * @param candidates all of the links that were considered for the next page.
+     * @return the series starting with the next page, or null if there doesn't seem to be one.
+     */
+    static PageSeries detect(String nextHref, Collection<String> candidates) {
+        Matcher matcher = Patterns.PAGE_AND_NUMBER.matcher(nextHref);
+        int end = -1;
+        while (matcher.find()) {
+            end = matcher.end();
+        }
+        if (end == -1) {
+            return null;
+        }
+        // the pattern takes at most two digits; take them all.
+        while (end < nextHref.length() && Character.isDigit(nextHref.charAt(end))) {
+            end++;
+        }
+        int start = end;
+        while (start > 0 && Character.isDigit(nextHref.charAt(start - 1))) {
+            start--;
+        }
+        int first;
+        try {
+            first = Integer.parseInt(nextHref.substring(start, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (first < 2) {
+            return null;
+        }
+        PageSeries series = new PageSeries(nextHref.substring(0, start), nextHref.substring(end), first);
+        for (String candidate : candidates) {
+            int number = series.numberOf(candidate);
+            if (number != -1 && number != first) {
+                return series;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the page number of a url in this series, or -1 if it isn't in the series.
+     */
+    int numberOf(String href) {
+        if (href.length() <= prefix.length() + suffix.length() || !href.startsWith(prefix)
+            || !href.endsWith(suffix)) {
+            return -1;
+        }
+        String digits = href.substring(prefix.length(), href.length() - suffix.length());
+        if (digits.length() > 9) {
+            return -1;
+        }
+        for (int x = 0; x < digits.length(); x++) {
+            if (!Character.isDigit(digits.charAt(x))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * @param index 0 for the first page of the series (the next page), and so on.
+     */
+    String urlFor(int index) {
+        return prefix + (first + index) + suffix;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "{" + first + "...}" + suffix;
+    }
+}
@@ -0,0 +1,60 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The raw content of a page, handed over by a {@link StreamPageReader} along with the character set the reader
+ * decided on. Whoever gets one of these has to close it.
+ */
+public final class PageStream implements Closeable {
+    private final InputStream stream;
+    private final Charset charset;
+    private final long contentLength;
+
+    public PageStream(InputStream stream, Charset charset, long contentLength) {
+        this.stream = stream;
+        this.charset = charset;
+        this.contentLength = contentLength;
+    }
+
+    public InputStream getStream() {
+        return stream;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the length of the content in bytes, or -1 if it isn't known.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        stream.close();
+    }
+}
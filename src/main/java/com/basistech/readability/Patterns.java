@@ -32,22 +32,47 @@ final class Patterns {
     static final Pattern NEXT_LINK = ciPattern("(next|weiter|continue|>([^\\|]|$)|»([^\\|]|$))");
                     // Match: next, continue, >, >>, » but not >|, »| as those usually mean last."
     static final Pattern PAGINATION = ciPattern("pag(e|ing|inat)");
+    private static final String[] PAGINATION_WORDS = {"page", "paging", "paginat"};
     static final Pattern FIRST_OR_LAST = ciPattern("(first|last)");
-    static final Pattern NEGATIVE = ciPattern("(combx|comment|com-|contact|foot|footer|footnote|masthead|media|meta|outbrain|promo|related|scroll|shoutbox|sidebar|sponsor|shopping|tags|tool|widget)");
+    private static final String[] NEGATIVE_WORDS = {"combx", "comment", "com-", "contact", "foot", "footer",
+        "footnote", "masthead", "media", "meta", "outbrain", "promo", "related", "scroll", "shoutbox", "sidebar",
+        "sponsor", "shopping", "tags", "tool", "widget"};
+    static final Pattern NEGATIVE = ciPattern("(" + alternation(NEGATIVE_WORDS) + ")");
     static final Pattern PREV_LINK = ciPattern("(prev|earl|old|new|<|«)");
-    static final Pattern POSITIVE = ciPattern("(article|body|content|entry|hentry|main|page|pagination|post|text|blog|story)");
-    //static final Pattern REPLACE_BRS = ciPattern("(<br[^>]*>[ \n\r\t]*){2,}");
-    //above causes a stack overflow crash on some pages, bottom behaves differnetly for some reason
-    static final Pattern REPLACE_BRS = ciPattern("(<br[^>]*>[ \n\r\t]*)\1+");
+    private static final String[] POSITIVE_WORDS = {"article", "body", "content", "entry", "hentry", "main", "page",
+        "pagination", "post", "text", "blog", "story"};
+    static final Pattern POSITIVE = ciPattern("(" + alternation(POSITIVE_WORDS) + ")");
 
-    static final Pattern UNLIKELY_CANDIDATES = ciPattern("combx|comment|community|disqus|extra|foot|header|menu|remark|rss|shoutbox|sidebar|sponsor|ad-break|agegate|pagination|pager|popup|tweet|twitter");
-    static final Pattern OK_MAYBE_ITS_A_CANDIDATE = ciPattern("and|article|body|column|main|shadow");
+    private static final String[] UNLIKELY_CANDIDATES_WORDS = {"combx", "comment", "community", "disqus", "extra",
+        "foot", "header", "menu", "remark", "rss", "shoutbox", "sidebar", "sponsor", "ad-break", "agegate",
+        "pagination", "pager", "popup", "tweet", "twitter"};
+    static final Pattern UNLIKELY_CANDIDATES = ciPattern(alternation(UNLIKELY_CANDIDATES_WORDS));
+    private static final String[] OK_MAYBE_ITS_A_CANDIDATE_WORDS = {"and", "article", "body", "column", "main",
+        "shadow"};
+    static final Pattern OK_MAYBE_ITS_A_CANDIDATE = ciPattern(alternation(OK_MAYBE_ITS_A_CANDIDATE_WORDS));
     //below works better with espn "recap" pages, but unsure that's a good reason to change behavior.
     //static final Pattern OK_MAYBE_ITS_A_CANDIDATE = ciPattern("and|article|body|column|main|shadow|subheader");
     static final Pattern ENDS_WITH_DOT = Pattern.compile("\\.( |$)");
     static final Pattern DIGIT = Pattern.compile("\\d");
     static final Pattern BAR_DASH = Pattern.compile(" [\\|\\-] ");
 
+    /*
+     * The class and id heuristics test the same strings against several of the patterns above, all of which
+     * are plain lists of words. classify() looks for all of them in one pass and reports the ones it found as
+     * a mask of these bits; the result is the same as calling exists() with each pattern. The answers are
+     * remembered in the shared ClassificationCache.
+     */
+    static final int NEGATIVE_BIT = 1 << 0;
+    static final int POSITIVE_BIT = 1 << 1;
+    static final int UNLIKELY_CANDIDATES_BIT = 1 << 2;
+    static final int OK_MAYBE_ITS_A_CANDIDATE_BIT = 1 << 3;
+    static final int PAGINATION_BIT = 1 << 4;
+    private static final int WHOLE_SHIFT = 16;
+    private static final int FOUND_BITS = (1 << WHOLE_SHIFT) - 1;
+
+    private static final KeywordMatcher CLASS_AND_ID = new KeywordMatcher(NEGATIVE_WORDS, POSITIVE_WORDS,
+        UNLIKELY_CANDIDATES_WORDS, OK_MAYBE_ITS_A_CANDIDATE_WORDS, PAGINATION_WORDS);
+
     private Patterns() {
         //
     }
@@ -60,6 +85,38 @@ final class Patterns {
         return pattern.matcher(string).find();
     }
 
+    /**
+     * @return the *_BIT flags of the patterns that exists() would find in the string.
+     */
+    static int classify(String string) {
+        return ClassificationCache.getShared().lookup(string) & FOUND_BITS;
+    }
+
+    /**
+     * @return the *_BIT flags of the patterns that match() would accept for the whole string.
+     */
+    static int classifyWhole(String string) {
+        return ClassificationCache.getShared().lookup(string) >>> WHOLE_SHIFT;
+    }
+
+    /**
+     * Both answers at once, for the cache: the classify() bits, and the classifyWhole() bits above them.
+     */
+    static int computeClassification(String string) {
+        return CLASS_AND_ID.find(string) | CLASS_AND_ID.matchWhole(string) << WHOLE_SHIFT;
+    }
+
+    private static String alternation(String[] words) {
+        StringBuilder alternation = new StringBuilder();
+        for (String word : words) {
+            if (alternation.length() > 0) {
+                alternation.append('|');
+            }
+            alternation.append(word);
+        }
+        return alternation.toString();
+    }
+
     private static Pattern ciPattern(String patternString) {
         return Pattern.compile(patternString, Pattern.CASE_INSENSITIVE);
     }
@@ -18,23 +18,29 @@
 
 package com.basistech.readability;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,24 +48,24 @@ import org.slf4j.LoggerFactory;
 /**
  * Java version of the arclab readability javascript program. This uses jsoup to handle the DOM tree and
  * provide us with the sorts of operations that the javascript code loves. Make one of these objects for each
- * page. Provide it with an object to fetch more next pages to support that stuff.
+ * page. Provide it with an object to fetch more next pages to support that stuff. To share one object
+ * between threads, use a {@link ReadabilityExtractor}.
  */
 public class Readability {
     private static final Logger LOG = LoggerFactory.getLogger(Readability.class);
-    private static final Set<String> DIV_TO_P_ELEMENTS;
-    static {
-        DIV_TO_P_ELEMENTS = new HashSet<String>();
-        DIV_TO_P_ELEMENTS.add("a");
-        DIV_TO_P_ELEMENTS.add("blockquote");
-        DIV_TO_P_ELEMENTS.add("dl");
-        DIV_TO_P_ELEMENTS.add("div");
-        DIV_TO_P_ELEMENTS.add("img");
-        DIV_TO_P_ELEMENTS.add("ol");
-        DIV_TO_P_ELEMENTS.add("p");
-        DIV_TO_P_ELEMENTS.add("pre");
-        DIV_TO_P_ELEMENTS.add("table");
-        DIV_TO_P_ELEMENTS.add("ul");
-    }
+    // how far ahead a page series is fetched when there is no page limit.
+    static final int DEFAULT_SERIES_PAGES = 10;
+    /*
+     * The settings of stripUnlikelyCandidates, classWeight and cleanConditionally to try, in order. Each one
+     * turns off one more of the heuristics that throw content away.
+     */
+    private static final boolean[][] PASSES = {
+        {true, true, true},
+        {false, true, true},
+        {false, false, true},
+        {false, false, false}
+    };
+    static final int PASS_COUNT = PASSES.length;
     private Document document;
     private Element body;
     private PageReader pageReader;
@@ -67,20 +73,42 @@ public class Readability {
     private Set<String> parsedPages;
     private boolean impossible;
     private String title;
-    private boolean stripUnlikelyCandidates = true;
-    private boolean classWeight = true;
-    private boolean cleanConditionally = true;
     private String nextPageLink;
     private String articleText;
+    // the page being read
+    private String pageText;
+    private int pageLength;
+    private String pageTitle;
+    // the pages read so far, and the texts of those that were not written to the sink
+    private List<ArticlePage> pages;
+    private List<String> pageTexts;
+    private int articleLength;
+    private long contentRead;
+    private long maxContentLength;
+    private PageListener pageListener;
     private boolean readAllPages;
     private boolean notFirstPage;
-    private NekoJsoupParser nekoParser = new NekoJsoupParser();
+    private Executor speculativeExecutor;
+    private Executor prefetchExecutor;
+    private FutureTask<String> nextPageFetch;
+    private boolean fetchPageSeries;
+    private boolean readPageStreams;
+    private int maxPages;
+    private Set<String> nextPageCandidates;
+    private PageSeries pageSeries;
+    private List<FutureTask<String>> seriesFetches;
+    private boolean inPageSeries;
     // for some testing and debugging purposes, obtain string reps of the XML we
     // got from parsing.
     private List<String> xmlImages;
+    private HtmlPage htmlPage;
+    private Appendable textSink;
+    // the last page of text written to the sink, to tell when a page series starts repeating itself.
+    private TextFingerprint lastPageText;
+    private ReadabilityMetrics metrics = NoOpReadabilityMetrics.INSTANCE;
 
     public Readability() {
-        parsedPages = new HashSet<String>();
+        //
     }
 
     /**
@@ -90,36 +118,365 @@ public class Readability {
      * @param url the initial url
      */
     public void processDocument(String url) throws PageReadException {
-        // TODO: reset the results.
+        String content = fetch(url);
+        processDocument(url, content);
+    }
+
+    /**
+     * Process a page from bytes the caller already has, in a known character set. The bytes are decoded once,
+     * straight into the text that is parsed.
+     * 
+     * @param url the url the content came from
+     * @param data the content
+     * @param charset the encoding of the content
+     */
+    public void processDocument(String url, byte[] data, Charset charset) throws PageReadException {
+        processDocument(url, new String(data, charset));
+    }
+
+    /**
+     * Process a page from the remaining bytes of a buffer, in a known character set. The position of the
+     * buffer is not changed, so a mapped file or a pooled buffer can be passed in directly.
+     * 
+     * @param url the url the content came from
+     * @param data the content
+     * @param charset the encoding of the content
+     */
+    public void processDocument(String url, ByteBuffer data, Charset charset) throws PageReadException {
+        processDocument(url, PageDecoder.decode(data, charset));
+    }
+
+    /**
+     * Process a page from a stream, in a known character set, decoding it as it is read. The stream is read to
+     * the end but not closed.
+     * 
+     * @param url the url the content came from
+     * @param data the content
+     * @param charset the encoding of the content
+     */
+    public void processDocument(String url, InputStream data, Charset charset) throws PageReadException {
+        String content;
+        try {
+            content = PageDecoder.decode(data, charset, -1);
+        } catch (IOException e) {
+            throw new PageReadException("Failed to read " + url, e);
+        }
+        processDocument(url, content);
+    }
+
+    /**
+     * Process the content of a page that the caller has already read. If we follow next-page links, the
+     * following pages are read with the page reader, one after another, until there is no next page, the
+     * page or content limit is reached, or the page listener says to stop.
+     * 
+     * @param url the url the content came from
+     * @param content the content, already decoded
+     */
+    public void processDocument(String url, String content) throws PageReadException {
+        xmlImages = new ArrayList<String>();
+        title = null;
+        articleText = null;
+        pages = new ArrayList<ArticlePage>();
+        pageTexts = new ArrayList<String>();
+        articleLength = 0;
+        contentRead = 0;
+        try {
+            readPage(url, content);
+            if (addPage(url)) {
+                notFirstPage = true;
+                if (seriesFetches != null) {
+                    readPageSeries();
+                } else if (readAllPages) {
+                    readNextPages();
+                }
+            }
+        } finally {
+            notFirstPage = false;
+            // if the extraction failed, nobody wants the next page.
+            if (nextPageFetch != null) {
+                nextPageFetch.cancel(true);
+                nextPageFetch = null;
+            }
+            cancelAll(seriesFetches);
+            seriesFetches = null;
+        }
+        articleText = joinPageTexts();
+        pageTexts = null;
+    }
+
+    /*
+     * Parse and extract one page, leaving its text (or, if it went to the sink, just its length) for addPage.
+     */
+    private void readPage(String url, String content) throws PageReadException {
         impossible = false;
         givenUrl = url;
         nextPageLink = null;
-        if (!notFirstPage) {
-            xmlImages = new ArrayList<String>();
-            title = null;
+        pageText = null;
+        pageLength = -1;
+        pageTitle = null;
+        contentRead += content.length();
+
+        long start = System.nanoTime();
+        document = Jsoup.parse(content);
+        metrics.recordTime(ReadabilityMetrics.Stage.PARSE, System.nanoTime() - start);
+        metrics.increment(ReadabilityMetrics.Counter.PAGES, 1);
+        metrics.increment(ReadabilityMetrics.Counter.INPUT_CHARS, content.length());
+
+        if (document.getElementsByTag("body").size() == 0) {
+            LOG.error("no body to parse " + url);
+            impossible = true;
+            metrics.increment(ReadabilityMetrics.Counter.IMPOSSIBLE, 1);
+            throw new PageReadException("no body to parse");
+        }
+
+        init(); // this needs another name, it does all the work.
+        if (impossible) {
+            metrics.increment(ReadabilityMetrics.Counter.IMPOSSIBLE, 1);
+        }
+    }
+
+    /*
+     * Add the text of the page that was just read to the article.
+     * @return false if there was no text, or the listener wants no more pages.
+     */
+    private boolean addPage(String url) {
+        if (pageLength < 0) {
+            return false;
+        }
+        ArticlePage page = new ArticlePage(url, pageTitle, articleLength, articleLength + pageLength);
+        pages.add(page);
+        if (pageText != null) {
+            pageTexts.add(pageText);
+        }
+        articleLength += pageLength;
+        metrics.increment(ReadabilityMetrics.Counter.OUTPUT_CHARS, pageLength);
+        return pageListener == null || pageListener.pageAdded(page, pages.size());
+    }
+
+    /*
+     * The texts are only put together once, at the end, instead of copying the article so far for every page.
+     */
+    private String joinPageTexts() {
+        if (pageTexts.isEmpty()) {
+            return null;
+        }
+        if (pageTexts.size() == 1) {
+            return pageTexts.get(0);
         }
+        StringBuilder article = new StringBuilder(articleLength);
+        for (String text : pageTexts) {
+            article.append(text);
+        }
+        return article.toString();
+    }
 
-        String content = pageReader.readPage(url);
+    /*
+     * @return true if the limits allow one more page after those added so far and the one being read, if any.
+     */
+    private boolean roomForAnotherPage(boolean reading) {
+        return (maxPages <= 0 || pages.size() + (reading ? 1 : 0) < maxPages)
+               && (maxContentLength <= 0 || contentRead < maxContentLength);
+    }
 
-	document = Jsoup.parse(content);
+    /*
+     * Follow the next-page links, one page at a time.
+     */
+    private void readNextPages() throws PageReadException {
+        while (nextPageLink != null && roomForAnotherPage(false)) {
+            String url = nextPageLink;
+            readPage(url, readNextPage(url));
+            if (!addPage(url)) {
+                break;
+            }
+        }
+    }
 
-	if (document.getElementsByTag("body").size() == 0) {
-	    LOG.error("no body to parse " + url);
-	    impossible = true;
-	    throw new PageReadException("no body to parse");
-	}
+    /*
+     * The next page is the start of a numbered series, so fetch as many of the pages in it as we are allowed
+     * all at once, rather than finding each page's link on the page before.
+     */
+    private void startPageSeries(PageSeries series) {
+        seriesFetches = new ArrayList<FutureTask<String>>();
+        pageSeries = series;
+        int limit = maxPages > 0 ? maxPages : DEFAULT_SERIES_PAGES;
+        // the current page counts against the limit.
+        for (int index = 0; index < limit - 1; index++) {
+            final String url = series.urlFor(index);
+            parsedPages.add(url);
+            FutureTask<String> fetch = new FutureTask<String>(new Callable<String>() {
+                public String call() throws PageReadException {
+                    return fetch(url);
+                }
+            });
+            seriesFetches.add(fetch);
+            prefetchExecutor.execute(fetch);
+        }
+    }
 
-        init(); // this needs another name, it does all the work.
-        if (readAllPages && nextPageLink != null) {
-            try {
-                String textSoFar = articleText;
-                notFirstPage = true;
-                processDocument(nextPageLink);
-                if (articleText != null) {
-                    articleText = textSoFar + articleText;
+    /*
+     * Extract the pages of the series in order, appending their text, until a page is missing. A page with
+     * the same text as the page before it is taken as missing too; plenty of sites answer a page number past
+     * the end with the last page, or the first, instead of an error. So is a page with no article, or one
+     * that fails to extract; the rest answer with a short 'not found' page, sent as if it were a page.
+     */
+    private void readPageSeries() throws PageReadException {
+        List<FutureTask<String>> fetches = seriesFetches;
+        PageSeries series = pageSeries;
+        seriesFetches = null;
+        pageSeries = null;
+        String previousText = pageText;
+        String lastUrl = nextPageLink;
+        nextPageLink = null;
+        try {
+            inPageSeries = true;
+            for (int index = 0; index < fetches.size(); index++) {
+                if (!roomForAnotherPage(false)) {
+                    nextPageLink = series.urlFor(index);
+                    break;
+                }
+                String url = series.urlFor(index);
+                String content = getPageFromSeries(fetches.get(index), url);
+                if (content == null) {
+                    break;
+                }
+                try {
+                    readPage(url, content);
+                } catch (PageReadException e) {
+                    LOG.info("Series page " + url + " unusable, stopping", e);
+                    break;
+                } catch (RuntimeException e) {
+                    // a page past the end can be anything at all; whatever it does, it is not a page of ours.
+                    LOG.info("Series page " + url + " unusable, stopping", e);
+                    break;
+                }
+                if (pageText == null || isRepeat(pageText, previousText)) {
+                    break;
+                }
+                previousText = pageText;
+                if (textSink != null) {
+                    lastPageText = writeToSink(pageText);
+                    pageText = null;
+                }
+                lastUrl = url;
+                boolean more = addPage(url);
+                if (index == fetches.size() - 1) {
+                    // we stopped at the limit, not at the end.
+                    nextPageLink = series.urlFor(index + 1);
+                } else if (!more) {
+                    nextPageLink = series.urlFor(index + 1);
+                    break;
                 }
-            } finally {
-                notFirstPage = false;
+            }
+        } finally {
+            inPageSeries = false;
+            cancelAll(fetches);
+        }
+        LOG.debug("Read series " + series + " up to " + lastUrl);
+    }
+
+    private boolean isRepeat(String text, String previousText) {
+        if (textSink != null && previousText == null) {
+            // the page before went to the sink as it was extracted.
+            return lastPageText != null && lastPageText.sameText(text);
+        }
+        return text.equals(previousText);
+    }
+
+    private String getPageFromSeries(FutureTask<String> fetch, String url) throws PageReadException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PageReadException("Interrupted while waiting for " + url, e);
+        } catch (ExecutionException e) {
+            LOG.info("Series page " + url + " could not be read, stopping", e.getCause());
+            return null;
+        }
+    }
+
+    private static void cancelAll(List<FutureTask<String>> fetches) {
+        if (fetches != null) {
+            for (FutureTask<String> fetch : fetches) {
+                fetch.cancel(true);
+            }
+        }
+    }
+
+    /*
+     * Start reading the next page in the background, if there's an executor for it, so that the fetch
+     * overlaps the extraction of this page.
+     */
+    private void prefetchNextPage(final String url) {
+        if (prefetchExecutor == null) {
+            return;
+        }
+        nextPageFetch = new FutureTask<String>(new Callable<String>() {
+            public String call() throws PageReadException {
+                return fetch(url);
+            }
+        });
+        prefetchExecutor.execute(nextPageFetch);
+    }
+
+    private String readNextPage(String url) throws PageReadException {
+        if (nextPageFetch == null) {
+            return fetch(url);
+        }
+        FutureTask<String> fetch = nextPageFetch;
+        nextPageFetch = null;
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            fetch.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PageReadException("Interrupted while waiting for " + url, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PageReadException) {
+                throw (PageReadException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new PageReadException("Failed to read " + url, cause);
+        }
+    }
+
+    /*
+     * Read a page with the page reader, timing it. This can run on a prefetch thread.
+     */
+    private String fetch(String url) throws PageReadException {
+        long start = System.nanoTime();
+        String content;
+        if (readPageStreams && pageReader instanceof StreamPageReader) {
+            content = fetchStream((StreamPageReader)pageReader, url);
+        } else {
+            content = pageReader.readPage(url);
+        }
+        metrics.recordTime(ReadabilityMetrics.Stage.FETCH, System.nanoTime() - start);
+        return content;
+    }
+
+    /*
+     * Decode the page as it comes in, so the whole of it is never held as bytes as well as text.
+     */
+    private static String fetchStream(StreamPageReader reader, String url) throws PageReadException {
+        PageStream page = reader.openPage(url);
+        if (page == null) {
+            return null;
+        }
+        try {
+            long length = page.getContentLength();
+            return PageDecoder.decode(page.getStream(), page.getCharset(),
+                                      length > 0 && length <= Integer.MAX_VALUE ? (int)length : -1);
+        } catch (IOException e) {
+            throw new PageReadException("Failed to read " + url, e);
+        } finally {
+            try {
+                page.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close " + url, e);
             }
         }
     }
@@ -138,31 +495,24 @@ public class Readability {
     //some pages have a <p></p> combiantion to generate a space, but
     //readability seems to ignore it.  convert then to a single <p>
     private void handlePP() {
-	String inner = document.body().html();
-	inner.replaceAll("<p></p>", "<p>");
-	document.body().html(inner);
+        // the replacement never did anything; what is left of this is the reformatting of the body.
+        RoundTrip.reflow(document.body());
     }
 
     private void handleDoubleBr() {
         Elements doubleBrs = document.select("br + br");
+        RoundTrip.Replay replay = new RoundTrip.Replay();
         for (Element br : doubleBrs) {
             // we hope that there's a 'p' up there....
-            Elements parents = br.parents();
-            Element parent = null;
-            for (Element aparent : parents) {
-                if (aparent.tag().getName().equals("p")) {
-                    parent = aparent;
-                    break;
-                }
-            }
+            Element parent = replay.paragraphAbove(br);
             if (parent == null) {
                 parent = br.parent();
                 parent.wrap("<p></p>");
+                replay.changed();
             }
-            // now it's safe to make the change.
-            String inner = parent.html();
-            inner = Patterns.REPLACE_BRS.matcher(inner).replaceAll("</p><p>");
-            parent.html(inner);
+            // the old replacement of br runs never matched html() output (its \1 was a control character,
+            // not a back reference), so all the change comes to is the reformatting of parent.
+            replay.reflow(parent);
         }
     }
 
@@ -201,7 +551,7 @@ public class Readability {
     private void fontsToSpans() {
         Elements allFonts = document.getElementsByTag("font");
         for (Element fontElement : allFonts) {
-            changeElementTag(fontElement, "span");
+            ArticleGrabber.changeElementTag(document, fontElement, "span");
         }
     }
 
@@ -209,9 +559,12 @@ public class Readability {
         return url.replaceAll("/$", "");
     }
 
-    private void init() {
+    private void init() throws PageReadException {
+        long start = System.nanoTime();
         removeScripts();
         convertNoscriptToDiv();
+        // the title and the next page come in between; the two halves are reported as one.
+        long prepareNanos = System.nanoTime() - start;
         // there should never be more than one ... */
         Elements bodies = document.getElementsByTag("body");
         if (bodies.size() > 1) {
@@ -223,631 +576,306 @@ public class Readability {
          * Make sure this document is added to the list of parsed pages first, so we don't double up on the
          * first page
          */
-        parsedPages.add(normalizeTrailingSlash(givenUrl));
         //respect the readAllPages flag, very important if a stringPage
-        if (readAllPages)
-	    nextPageLink = findNextPageLink(body);
+        if (readAllPages) {
+            // only findNextPageLink cares about the parsed pages.
+            if (parsedPages == null) {
+                parsedPages = new HashSet<String>();
+            }
+            parsedPages.add(normalizeTrailingSlash(givenUrl));
+            if (!inPageSeries) {
+                start = System.nanoTime();
+                nextPageLink = findNextPageLink(body);
+                metrics.recordTime(ReadabilityMetrics.Stage.FIND_NEXT_PAGE_LINK, System.nanoTime() - start);
+            }
+            if (nextPageLink != null) {
+                PageSeries series = null;
+                if (fetchPageSeries && prefetchExecutor != null && !notFirstPage) {
+                    series = PageSeries.detect(nextPageLink, nextPageCandidates);
+                }
+                if (series != null) {
+                    LOG.debug("Next pages look like the series " + series);
+                    startPageSeries(series);
+                } else if (roomForAnotherPage(true)) {
+                    prefetchNextPage(nextPageLink);
+                }
+            }
+            nextPageCandidates = null;
+        }
 
+        pageTitle = getArticleTitle();
         if (!notFirstPage) {
-            title = getArticleTitle();
+            title = pageTitle;
         }
+        start = System.nanoTime();
         prepDocument();
+        prepareNanos += System.nanoTime() - start;
+        metrics.recordTime(ReadabilityMetrics.Stage.PREPARE_DOCUMENT, prepareNanos);
 
+        start = System.nanoTime();
         Element articleContent = grabArticle(null);
+        metrics.recordTime(ReadabilityMetrics.Stage.GRAB_ARTICLE, System.nanoTime() - start);
         if (articleContent == null && !notFirstPage) {
             // this happens when the content of the page is very short.
             // we don't believe in super-short next pages.
-            articleText = body.text();
+            pageText = writeOut(body.text());
+        } else if (articleContent == null) {
+            // with no text, the page is not added, and we read no further.
+            LOG.debug("No article on " + givenUrl);
         } else {
             xmlImages.add(articleContent.outerHtml());
-            articleText = getDisplayText(articleContent);
+            start = System.nanoTime();
+            pageText = getDisplayText(articleContent);
+            metrics.recordTime(ReadabilityMetrics.Stage.DISPLAY_TEXT, System.nanoTime() - start);
         }
-    }
-
-    private void convertNoscriptToDiv() {
-        Elements noscript = document.getElementsByTag("noscript");
-        for (Element e : noscript) {
-            changeElementTag(e, "div");
-        }
-
-    }
-
-    private void setContentScore(Element node, double score) {
-        node.attr("data-readability.contentScore", Double.toString(score));
-    }
-
-    private boolean isElementScored(Element node) {
-        return node.hasAttr("data-readability.contentScore");
-    }
-
-    private void incrementContentScore(Element node, double score) {
-        node.attr("data-readability.contentScore", Double.toString(getContentScore(node) + score));
-    }
-
-    private double getContentScore(Element node) {
-        String scoreString = node.attr("data-readability.contentScore");
-        if ("".equals(scoreString)) {
-            return 0;
-        } else {
-            return Double.parseDouble(scoreString);
+        if (pageText != null) {
+            pageLength = pageText.length();
         }
     }
 
-    private void initializeNode(Element node) {
-        // CHECKSTYLE:OFF
-        node.attr("readability", "true");
-        String tagName = node.tagName();
-        if ("div".equals(tagName)) {
-            incrementContentScore(node, 5);
-        } else if ("pre".equals(tagName) || "td".equals(tagName) || "blockquote".equals(tagName)) {
-            incrementContentScore(node, 3);
-        } else if ("address".equals(tagName) || "ol".equals(tagName) || "ul".equals(tagName)
-                   || "dl".equals(tagName) || "dd".equals(tagName) || "dt".equals(tagName)
-                   || "li".equals(tagName) || "form".equals(tagName)) {
-            incrementContentScore(node, -3);
-        } else if (tagName.matches("h[1-6]") || "th".equals(tagName)) {
-            incrementContentScore(node, -5);
-        }
-        incrementContentScore(node, getClassWeight(node));
-        // CHECKSTYLE:ON
-    }
-
     /**
-     * Get an elements class/id weight. Uses regular expressions to tell if this element looks good or bad.
-     * 
-     * @param Element
-     * @return number (Integer)
-     **/
-    private double getClassWeight(Element e) {
-        if (!classWeight) {
-            return 0;
-        }
-
-        int weight = 0;
-
-        /* Look for a special classname */
-        String className = e.className();
-        if (!"".equals(className)) {
-            if (Patterns.exists(Patterns.NEGATIVE, className)) {
-                weight -= 25;
-            }
-            if (Patterns.exists(Patterns.POSITIVE, className)) {
-                weight += 25;
-            }
-        }
-
-        /* Look for a special ID */
-        String id = e.id();
-        if (!"".equals(id)) {
-            if (Patterns.exists(Patterns.NEGATIVE, id)) {
-                weight -= 25;
-            }
-            if (Patterns.exists(Patterns.POSITIVE, id)) {
-                weight += 25;
-            }
-        }
-        return weight;
+     * Get a parsed page ready for grabArticle, doing what processDocument does to it first, apart from
+     * working out the title and the next page. This is for timing the steps one at a time.
+     */
+    Document prepare(Document parsed) {
+        document = parsed;
+        removeScripts();
+        convertNoscriptToDiv();
+        body = document.getElementsByTag("body").get(0);
+        prepDocument();
+        return document;
     }
 
-    private Element changeElementTag(Element e, String newTag) {
-        Element newElement = document.createElement(newTag);
-        /* JSoup gives us the live child list, so we need to make a copy. */
-        List<Node> copyOfChildNodeList = new ArrayList<Node>();
-        copyOfChildNodeList.addAll(e.childNodes());
-        for (Node n : copyOfChildNodeList) {
-            n.remove();
-            newElement.appendChild(n);
+    private void convertNoscriptToDiv() {
+        Elements noscript = document.getElementsByTag("noscript");
+        for (Element e : noscript) {
+            ArticleGrabber.changeElementTag(document, e, "div");
         }
-        e.replaceWith(newElement);
-        return newElement;
+
     }
 
-    // CHECKSTYLE:OFF
-    private Element grabArticle(Element pageElement) {
+    Element grabArticle(Element pageElement) throws PageReadException {
         boolean isPaging = pageElement != null;
 
         if (pageElement == null) {
             pageElement = body;
         }
 
-        String pageCacheHtml = pageElement.html();
-        Elements allElements = pageElement.getAllElements();
+        if (speculativeExecutor != null) {
+            int[] bodyPath = pathTo(body);
+            // the copies find the body by its path; if that doesn't lead back to it, run the passes here.
+            if (find(document, bodyPath) == body) {
+                return grabArticleSpeculatively(isPaging, bodyPath);
+            }
+            LOG.debug("The body can't be found by its path; running the passes one after another");
+        }
+
         /*
-         * Note: in Javascript, this list would be *live*. If you deleted a node from the tree, it and its
-         * children would remove themselves. To get the same effect, we make a linked list and we remove
-         * things from it. This won't win prizes for speed, but, then again, the code in Javascript has to be
-         * doing something nearly as awful.
+         * If a pass doesn't come up with enough text, put the page back the way it was and try again with
+         * the next set of flags. Retries have always been run as paging passes, and start with the scores the
+         * passes before them left above the page.
          */
-        LinkedList<Element> allElementsList = new LinkedList<Element>();
-        allElementsList.addAll(allElements);
-
-        /**
-         * First, node prepping. Trash nodes that look cruddy (like ones with the class name "comment", etc),
-         * and turn divs into P tags where they have been used inappropriately (as in, where they contain no
-         * other block level elements.) Note: Assignment from index for performance. See
-         * http://www.peachpit.com/articles/article.aspx?p=31567&seqNum=5 TODO: Shouldn't this be a reverse
-         * traversal?
-         **/
-        List<Element> nodesToScore = new ArrayList<Element>();
-        ListIterator<Element> elIterator = allElementsList.listIterator();
-        Set<Element> goodAsDead = new HashSet<Element>();
-        while (elIterator.hasNext()) {
-            Element node = elIterator.next();
-            if (goodAsDead.contains(node)) {
-                continue;
+        CarriedScores inherited = null;
+        for (int pass = 0; pass < PASSES.length; pass++) {
+            DomSnapshot pageSnapshot = new DomSnapshot(pageElement);
+            if (pass > 0) {
+                metrics.increment(ReadabilityMetrics.Counter.RETRIES, 1);
             }
-
-            /* Remove unlikely candidates */
-            if (stripUnlikelyCandidates) {
-                String unlikelyMatchString = node.className() + node.id();
-                if (Patterns.exists(Patterns.UNLIKELY_CANDIDATES, unlikelyMatchString)
-                    && !Patterns.exists(Patterns.OK_MAYBE_ITS_A_CANDIDATE, unlikelyMatchString)
-                    && !"body".equals(node.tagName())) {
-                    LOG.debug("Removing unlikely candidate - " + unlikelyMatchString);
-                    List<Element> toRemoveAndBelow = node.getAllElements();
-                    elIterator.remove();
-                    /*
-                     * adding 'node' to that set is harmless and reduces the code complexity here.
-                     */
-                    goodAsDead.addAll(toRemoveAndBelow);
-                    continue;
-                }
+            boolean[] flags = PASSES[pass];
+            ArticleGrabber grabber = new ArticleGrabber(document, pageElement, isPaging || pass > 0, flags[0],
+                                                        flags[1], flags[2]);
+            grabber.setMetrics(metrics);
+            CarriedScores passedOn = pass < PASSES.length - 1 ? new CarriedScores() : null;
+            grabber.carryScores(inherited, passedOn);
+            inherited = passedOn;
+            long start = System.nanoTime();
+            Element articleContent = grabber.grab();
+            boolean found = grabber.foundArticle();
+            metrics.recordPass(pass, System.nanoTime() - start, found);
+            if (pass == 0) {
+                metrics.increment(ReadabilityMetrics.Counter.DOM_ELEMENTS, grabber.getElementCount());
             }
-
-            if ("p".equals(node.tagName()) || "td".equals(node.tagName()) || "pre".equals(node.tagName())) {
-                nodesToScore.add(node);
+            if (found) {
+                return articleContent;
             }
+            pageSnapshot.restore();
+        }
+        return null;
+    }
 
-            /*
-             * Turn all divs that don't have children block level elements into p's
-             */
-            if ("div".equals(node.tagName())) {
-                boolean hasBlock = false;
-                for (Element divChild : node.getAllElements()) {
-                    if (divChild != node) {
-                        if (DIV_TO_P_ELEMENTS.contains(divChild.tagName())) {
-                            hasBlock = true;
-                            break;
+    /**
+     * Run all of the passes at once, each on its own copy of the document, and take the first one in order
+     * that finds an article. The original document is left alone; if a pass wins, its copy becomes the
+     * document. Each pass starts from the page as the restores after the passes before it would have left
+     * it, and waits for the one before it to finish scoring, to start from the scores it left above the
+     * page, just as when the passes run one after another; only the scoring has to wait.
+     */
+    private Element grabArticleSpeculatively(boolean isPaging, final int[] bodyPath) throws PageReadException {
+        List<FutureTask<ArticleGrabber>> passes = new ArrayList<FutureTask<ArticleGrabber>>(PASSES.length);
+        CarriedScores inherited = null;
+        for (int pass = 0; pass < PASSES.length; pass++) {
+            final int passNumber = pass;
+            final boolean[] flags = PASSES[pass];
+            final boolean passIsPaging = isPaging || pass > 0;
+            final Document original = document;
+            final CarriedScores passInherits = inherited;
+            final CarriedScores passedOn = pass < PASSES.length - 1 ? new CarriedScores() : null;
+            FutureTask<ArticleGrabber> task = new FutureTask<ArticleGrabber>(new Callable<ArticleGrabber>() {
+                public ArticleGrabber call() {
+                    try {
+                        Document copy = original.clone();
+                        if (Thread.currentThread().isInterrupted()) {
+                            return null; // cancelled, someone else won.
                         }
-                    }
-                }
-                if (!hasBlock) {
-                    Element newElement = changeElementTag(node, "p");
-                    nodesToScore.remove(node);
-                    nodesToScore.add(newElement);
-                } else {
-
-                    /* EXPERIMENTAL *//*
-                                       * grab just child text and wrap each chunk in a p
-                                       */
-                    int limit = node.childNodes().size();
-                    for (int i = 0; i < limit; i++) {
-                        Node childNode = node.childNodes().get(i);
-                        if (childNode instanceof TextNode) {
-                            Element p = document.createElement("p");
-                            p.attr("basisInline", "true");
-                            p.html(((TextNode)childNode).text());
-                            childNode.replaceWith(p);
+                        Element copyBody = find(copy, bodyPath);
+                        for (int restore = 0; restore < passNumber; restore++) {
+                            RoundTrip.reflow(copyBody);
+                        }
+                        ArticleGrabber grabber = new ArticleGrabber(copy, copyBody, passIsPaging, flags[0],
+                                                                    flags[1], flags[2]);
+                        grabber.setMetrics(metrics);
+                        grabber.carryScores(passInherits, passedOn);
+                        long start = System.nanoTime();
+                        grabber.grab();
+                        metrics.recordPass(passNumber, System.nanoTime() - start, grabber.foundArticle());
+                        return grabber;
+                    } finally {
+                        if (passedOn != null) {
+                            // never leave the next pass waiting.
+                            passedOn.release();
                         }
                     }
                 }
+            });
+            if (passedOn != null) {
+                passedOn.setProducer(task);
             }
+            inherited = passedOn;
+            passes.add(task);
+            speculativeExecutor.execute(task);
         }
 
-        /**
-         * Loop through all paragraphs, and assign a score to them based on how content-y they look. Then add
-         * their score to their parent node. A score is determined by things like number of commas, class
-         * names, etc. Maybe eventually link density.
-         **/
-        List<Element> candidates = new ArrayList<Element>();
-        for (Element nodeToScore : nodesToScore) {
-            Element parentNode = nodeToScore.parent();
-            if (null == parentNode) { // might be an orphan whose parent was
-                // dropped previously.
-                continue;
-            }
-            Element grandParentNode = parentNode.parent();
-            if (grandParentNode == null) {
-                continue; // ditto
-            }
-            String innerText = nodeToScore.text();
-
-            /*
-             * If this paragraph is less than 25 characters, don't even count it.
-             */
-            if (innerText.length() < 25) {
-                continue;
+        try {
+            for (int pass = 0; pass < passes.size(); pass++) {
+                ArticleGrabber grabber = passes.get(pass).get();
+                if (pass == 0) {
+                    metrics.increment(ReadabilityMetrics.Counter.DOM_ELEMENTS, grabber.getElementCount());
+                } else {
+                    // counted as if the passes had been run one after another.
+                    metrics.increment(ReadabilityMetrics.Counter.RETRIES, 1);
+                }
+                if (grabber.foundArticle()) {
+                    document = grabber.getDocument();
+                    body = find(document, bodyPath);
+                    return grabber.getArticleContent();
+                }
             }
-
-            /* Initialize readability data for the parent. */
-            if ("".equals(parentNode.attr("readability"))) {
-                initializeNode(parentNode);
-                candidates.add(parentNode);
+            // leave the page as the restore after each pass would have.
+            for (int pass = 0; pass < PASSES.length; pass++) {
+                RoundTrip.reflow(body);
             }
-
-            /* Initialize readability data for the grandparent. */
-            /*
-             * If the grandparent has no parent, we don't want it as a candidate. It's probably a symptom that
-             * we're operating in an orphan.
-             */
-            if (grandParentNode.parent() != null && "".equals(grandParentNode.attr("readability"))) {
-                initializeNode(grandParentNode);
-                candidates.add(grandParentNode);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PageReadException("Interrupted while waiting for grabArticle passes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
             }
-
-            double contentScore = 0;
-
-            /* Add a point for the paragraph itself as a base. */
-            contentScore++;
-
-            /* Add points for any commas within this paragraph */
-            contentScore += innerText.split(",").length;
-
-            /*
-             * For every 100 characters in this paragraph, add another point. Up to 3 points.
-             */
-            contentScore += Math.min(Math.floor(innerText.length() / 100.0), 3.0);
-
-            /* Add the score to the parent. The grandparent gets half. */
-            incrementContentScore(parentNode, contentScore);
-
-            if (grandParentNode != null) {
-                incrementContentScore(grandParentNode, contentScore / 2.0);
-            }
-        }
-
-        /**
-         * After we've calculated scores, loop through all of the possible candidate nodes we found and find
-         * the one with the highest score.
-         **/
-        Element topCandidate = null;
-        for (Element candidate : candidates) {
-            /**
-             * Scale the final candidates score based on link density. Good content should have a relatively
-             * small link density (5% or less) and be mostly unaffected by this operation.
-             **/
-            double score = getContentScore(candidate);
-            double newScore = score * (1.0 - getLinkDensity(candidate));
-            setContentScore(candidate, newScore);
-            LOG.debug("Candidate [" + candidate.getClass() + "] (" + candidate.className() + ":"
-                      + candidate.id() + ") with score " + newScore);
-
-            if (null == topCandidate || newScore > getContentScore(topCandidate)) {
-                topCandidate = candidate;
+            throw new PageReadException("grabArticle pass failed", cause);
+        } finally {
+            for (FutureTask<ArticleGrabber> task : passes) {
+                task.cancel(true);
             }
         }
+    }
 
-        /**
-         * If we still have no top candidate, just use the body as a last resort. We also have to copy the
-         * body node so it is something we can modify.
-         **/
-        if (topCandidate == null || topCandidate == body) {
-            topCandidate = document.createElement("div");
-            // not efficient but not likely.
-            topCandidate.html(pageElement.html());
-            pageElement.html("");
-            pageElement.appendChild(topCandidate);
-            initializeNode(topCandidate);
+    /* The child indices that lead from the document down to an element. */
+    private static int[] pathTo(Element element) {
+        LinkedList<Integer> path = new LinkedList<Integer>();
+        for (Node node = element; node.parent() != null; node = node.parent()) {
+            path.addFirst(node.siblingIndex());
         }
-
-        /**
-         * Now that we have the top candidate, look through its siblings for content that might also be
-         * related. Things like preambles, content split by ads that we removed, etc.
-         **/
-        Element articleContent = document.createElement("div");
-        if (isPaging) {
-            articleContent.attr("id", "readability-content");
-        }
-        double siblingScoreThreshold = Math.max(10, getContentScore(topCandidate) * 0.2);
-        List<Element> siblingNodes = topCandidate.parent().children();
-
-        for (Element siblingNode : siblingNodes) {
-            boolean scored = isElementScored(siblingNode);
-
-            boolean append = false;
-
-            LOG.debug("Looking at sibling node: [" + siblingNode.getClass() + "] (" + siblingNode.className()
-                      + ":" + siblingNode.id() + ")");
-            if (scored) {
-                LOG.debug("Sibling has score " + getContentScore(siblingNode));
-            } else {
-                LOG.debug("Sibling has score unknown");
-            }
-
-            if (siblingNode == topCandidate) {
-                append = true;
-            }
-
-            double contentBonus = 0;
-            /*
-             * Give a bonus if sibling nodes and top candidates have the example same classname
-             */
-            if (siblingNode.className().equals(topCandidate.className())
-                && !"".equals(topCandidate.className())) {
-                contentBonus += getContentScore(topCandidate) * 0.2;
-            }
-
-            if (scored && (getContentScore(siblingNode) + contentBonus >= siblingScoreThreshold)) {
-                append = true;
-            }
-
-            if ("p".equals(siblingNode.tagName())) {
-                double linkDensity = getLinkDensity(siblingNode);
-                String nodeContent = siblingNode.text();
-                int nodeLength = nodeContent.length();
-
-                if (nodeLength > 80 && linkDensity < 0.25) {
-                    append = true;
-                } else if (nodeLength < 80 && linkDensity == 0
-                           && Patterns.exists(Patterns.ENDS_WITH_DOT, nodeContent)) {
-                    append = true;
-                }
-            }
-
-            if (append) {
-                LOG.debug("Appending node: [" + siblingNode.getClass() + "]");
-
-                Element nodeToAppend = null;
-                if (!"div".equals(siblingNode.tagName()) && !"p".equals(siblingNode.tagName())) {
-                    /*
-                     * We have a node that isn't a common block level element, like a form or td tag. Turn it
-                     * into a div so it doesn't get filtered out later by accident.
-                     */
-
-                    LOG.debug("Altering siblingNode of " + siblingNode.tagName() + " to div.");
-                    nodeToAppend = changeElementTag(siblingNode, "div");
-                } else {
-                    nodeToAppend = siblingNode;
-                }
-
-                /*
-                 * To ensure a node does not interfere with readability styles, remove its classnames
-                 */
-                nodeToAppend.removeAttr("class");
-
-                /*
-                 * Append sibling and subtract from our list because it removes the node when you append to
-                 * another node
-                 */
-                articleContent.appendChild(nodeToAppend);
-            }
+        int[] result = new int[path.size()];
+        for (int x = 0; x < result.length; x++) {
+            result[x] = path.get(x);
         }
+        return result;
+    }
 
-        document.body().empty();
-        document.body().appendChild(articleContent);
-
-        /**
-         * So we have all of the content that we need. Now we clean it up for presentation.
-         **/
-        prepArticle(articleContent);
-
-        /**
-         * Now that we've gone through the full algorithm, check to see if we got any meaningful content. If
-         * we didn't, we may need to re-run grabArticle with different flags set. This gives us a higher
-         * likelihood of finding the content, and the sieve approach gives us a higher likelihood of finding
-         * the -right- content.
-         **/
-        if (articleContent.text().length() < 250) {
-            pageElement.html(pageCacheHtml);
-            if (stripUnlikelyCandidates) {
-                try {
-                    stripUnlikelyCandidates = false;
-                    return grabArticle(pageElement);
-                } finally {
-                    stripUnlikelyCandidates = true;
-                }
-            } else if (classWeight) {
-                try {
-                    classWeight = false;
-                    return grabArticle(pageElement);
-                } finally {
-                    classWeight = true;
-                }
-            } else if (cleanConditionally) {
-                try {
-                    cleanConditionally = false;
-                    return grabArticle(pageElement);
-                } finally {
-                    cleanConditionally = true;
-                }
-            } else {
+    /*
+     * @return the element at the end of the path, or null if there isn't one. The path can be wrong:
+     * siblingIndex compares nodes by value, and the body may have been moved out of the document.
+     */
+    private static Element find(Document document, int[] path) {
+        Node node = document;
+        for (int index : path) {
+            if (index < 0 || index >= node.childNodes().size()) {
                 return null;
             }
+            node = node.childNode(index);
         }
-
-        return articleContent;
+        return node instanceof Element ? (Element)node : null;
     }
 
-    private String getDisplayText(Element e) {
-        HtmlPage htmlPage = new HtmlPage();
+    private String getDisplayText(Element e) throws PageReadException {
+        // one buffer does for all the pages of a series.
+        if (htmlPage == null) {
+            htmlPage = new HtmlPage();
+            // nothing here looks at the offsets.
+            htmlPage.setTrackOffsets(false);
+        } else {
+            htmlPage.reset();
+        }
+        if (streaming()) {
+            TextFingerprint pageText = new TextFingerprint(textSink);
+            try {
+                htmlPage.process(document, pageText);
+            } catch (IOException ex) {
+                throw new PageReadException("Failed to write the text of " + givenUrl, ex);
+            }
+            lastPageText = pageText;
+            pageLength = pageText.length();
+            return null;
+        }
         htmlPage.process(document);
         String thisText = htmlPage.getPcData();
         LOG.debug("Text: " + thisText);
         return thisText;
     }
 
-    /**
-     * Clean an element of all tags of type "tag" if they look fishy. "Fishy" is an algorithm based on content
-     * length, classnames, link density, number of images & embeds, etc.
-     * 
-     * @return void
-     **/
-    private void cleanConditionally(Element e, String tag) {
-
-        if (!cleanConditionally) {
-            return;
-        }
-
-        Elements tagsList = e.getElementsByTag(tag);
-        int curTagsLength = tagsList.size();
-
-        /**
-         * Gather counts for other typical elements embedded within. Traverse backwards so we can remove nodes
-         * at the same time without effecting the traversal. TODO: Consider taking into account original
-         * contentScore here.
-         **/
-        for (int i = curTagsLength - 1; i >= 0; i--) {
-            Element ee = tagsList.get(i);
-            if (ee.ownerDocument() == null) {
-                continue; // it a child of something we've already killed, so it
-                // has no document.
-            }
-            double weight = getClassWeight(ee);
-            double contentScore = getContentScore(ee);
-
-            LOG.debug("Cleaning Conditionally [" + ee.getClass() + "] (" + ee.className() + ":" + ee.id()
-                      + ")" + contentScore);
-
-            if (weight + contentScore < 0) {
-                LOG.debug("Negative content score");
-                ee.remove();
-            } else if (getCharCount(ee, ',') < 10) {
-                /**
-                 * If there are not very many commas, and the number of non-paragraph elements is more than
-                 * paragraphs or other ominous signs, remove the element.
-                 **/
-                int p = ee.getElementsByTag("p").size();
-                int img = ee.getElementsByTag("img").size();
-                int li = ee.getElementsByTag("li").size() - 100;
-                int input = ee.getElementsByTag("input").size();
-
-                Elements embeds = ee.getElementsByTag("embed");
-                int embedCount = embeds.size();
-                // removed code that pays specific attention to youtube.
-                double linkDensity = getLinkDensity(ee);
-                int contentLength = ee.text().length();
-                boolean toRemove = false;
-
-                if (img > p) {
-                    toRemove = true;
-                } else if (li > p && !"ul".equals(tag) && !"ol".equals(tag)) {
-                    toRemove = true;
-                } else if (input > Math.floor(p / 3)) {
-                    toRemove = true;
-                } else if (contentLength < 25 && (img == 0 || img > 2)) {
-                    toRemove = true;
-                } else if (weight < 25 && linkDensity > 0.2) {
-                    toRemove = true;
-                } else if (weight >= 25 && linkDensity > 0.5) {
-                    toRemove = true;
-                } else if ((embedCount == 1 && contentLength < 75) || embedCount > 1) {
-                    toRemove = true;
-                }
-
-                if (toRemove) {
-                    LOG.debug("failed keep tests.");
-                    ee.remove();
-                }
-            }
-        }
-    }
-
-    /**
-     * Clean out spurious headers from an Element. Checks things like classnames and link density.
-     * 
-     * @param Element
-     * @return void
-     **/
-    private void cleanHeaders(Element e) {
-        for (int headerIndex = 1; headerIndex < 3; headerIndex++) {
-            Elements headers = e.getElementsByTag("h" + headerIndex);
-            for (int i = headers.size() - 1; i >= 0; i--) {
-                if (getClassWeight(headers.get(i)) < 0 || getLinkDensity(headers.get(i)) > 0.33) {
-                    headers.get(i).remove();
-                }
-            }
-        }
-    }
-
-    /**
-     * Prepare the article node for display. Clean out any inline styles, iframes, forms, strip extraneous
-     * <p>
-     * tags, etc. This takes an element in, but returns a string.
-     * 
-     * @param Element
-     * @return void
-     **/
-    private void prepArticle(Element articleContent) {
-        // we don't need to do this, we don't care
-        cleanStyles(articleContent);
-        // this replaces any break element or an nbsp with a plain break
-        // element.
-        // not needed. We will deal with breaks as we deal with breaks
-        // killBreaks(articleContent);
-
-        /* Clean out junk from the article content */
-        cleanConditionally(articleContent, "form");
-        clean(articleContent, "object");
-        clean(articleContent, "h1");
-
-        /**
-         * If there is only one h2, they are probably using it as a header and not a subheader, so remove it
-         * since we already have a header.
-         ***/
-        if (articleContent.getElementsByTag("h2").size() == 1) {
-            clean(articleContent, "h2");
-        }
-        clean(articleContent, "iframe");
-
-        cleanHeaders(articleContent);
-
-        /*
-         * Do these last as the previous stuff may have removed junk that will affect these
-         */
-        cleanConditionally(articleContent, "table");
-        cleanConditionally(articleContent, "ul");
-        //could have no children, will crash then
-        if (articleContent.children().size() != 0) {
-            cleanConditionally(articleContent.child(0), "div");
-        }
-
-        /* Remove extra paragraphs */
-        Elements articleParagraphs = articleContent.getElementsByTag("p");
-        for (Element para : articleParagraphs) {
-            int imgCount = para.getElementsByTag("img").size();
-            int embedCount = para.getElementsByTag("embed").size();
-            int objectCount = para.getElementsByTag("object").size();
-
-            if (imgCount == 0 && embedCount == 0 && objectCount == 0 && para.text().matches("\\s*")) {
-                para.remove();
-            }
-        }
-
-        Elements parasWithPreceedingBreaks = articleContent.getElementsByTag("br + p");
-        for (Element pe : parasWithPreceedingBreaks) {
-            Element brElement = pe.previousElementSibling();
-            brElement.remove();
-        }
+    /*
+     * The pages of a series are held back until they have been compared with the page before; every other
+     * page goes straight to the sink.
+     */
+    private boolean streaming() {
+        return textSink != null && !inPageSeries;
     }
 
-    private void cleanStyles(Element articleContent) {
-        // we want to clear off the style attributes in case they influence
-        // something else.
-        for (Element e : articleContent.getAllElements()) {
-            e.removeAttr("style");
+    /*
+     * Send the text of a page to the sink, if there is one and it is time to, in which case there is no text
+     * left to keep.
+     */
+    private String writeOut(String text) throws PageReadException {
+        if (!streaming()) {
+            return text;
         }
+        lastPageText = writeToSink(text);
+        pageLength = lastPageText.length();
+        return null;
     }
 
-    /**
-     * Clean a node of all elements of type "tag".
-     * 
-     * @param Element
-     * @param string tag to clean
-     **/
-    private void clean(Element e, String tag) {
-        Elements targetList = e.getElementsByTag(tag);
-        targetList.remove();
-    }
-
-    private double getLinkDensity(Element e) {
-        Elements links = e.getElementsByTag("a");
-        double textLength = e.text().length();
-        double linkLength = 0;
-        for (Element link : links) {
-            linkLength += link.text().length();
+    private TextFingerprint writeToSink(String text) throws PageReadException {
+        TextFingerprint pageText = new TextFingerprint(textSink);
+        try {
+            pageText.append(text);
+        } catch (IOException e) {
+            throw new PageReadException("Failed to write the text of " + givenUrl, e);
         }
-
-        return linkLength / textLength;
+        return pageText;
     }
 
     private String getArticleTitle() {
@@ -1107,16 +1135,17 @@ public class Readability {
             boolean negativeNodeMatch = false;
             while (parentNode != null) {
                 String parentNodeClassAndId = parentNode.className() + " " + parentNode.id();
-                if (!positiveNodeMatch && Patterns.match(Patterns.PAGINATION, parentNodeClassAndId)) {
+                int matchedWhole = Patterns.classifyWhole(parentNodeClassAndId);
+                if (!positiveNodeMatch && (matchedWhole & Patterns.PAGINATION_BIT) != 0) {
                     positiveNodeMatch = true;
                     linkObj.incrementScore(25);
                 }
-                if (!negativeNodeMatch && Patterns.match(Patterns.NEGATIVE, parentNodeClassAndId)) {
+                if (!negativeNodeMatch && (matchedWhole & Patterns.NEGATIVE_BIT) != 0) {
                     /*
                      * If this is just something like "footer", give it a negative. If it's something like
                      * "body-and-footer", leave it be.
                      */
-                    if (!Patterns.exists(Patterns.POSITIVE, parentNodeClassAndId)) {
+                    if ((Patterns.classify(parentNodeClassAndId) & Patterns.POSITIVE_BIT) == 0) {
                         linkObj.incrementScore(-25);
                         negativeNodeMatch = true;
                     }
@@ -1176,6 +1205,7 @@ public class Readability {
          * Require at least a score of 50, which is a relatively high confidence that this page is the next
          * link.
          **/
+        nextPageCandidates = possiblePages.keySet();
         PageLinkInfo topPage = null;
         for (Map.Entry<String, PageLinkInfo> pageEntry : possiblePages.entrySet()) {
             if (pageEntry.getValue().getScore() >= 50
@@ -1194,17 +1224,6 @@ public class Readability {
         }
     }
 
-    /**
-     * Get the number of times a string s appears in the node e.
-     * 
-     * @param Element
-     * @param string - what to split on. Default is ","
-     * @return number (integer)
-     **/
-    int getCharCount(Element e, char s) {
-        return e.text().split(Character.toString(s)).length - 1;
-    }
-
     public void setPageReader(PageReader pageReader) {
         this.pageReader = pageReader;
     }
@@ -1241,4 +1260,144 @@ public class Readability {
         return xmlImages;
     }
 
+    /**
+     * @return a snapshot of the results of the last call to processDocument.
+     */
+    ExtractionResult getResult(String url) {
+        return new ExtractionResult(url, title, articleText, nextPageLink, impossible, xmlImages, pages);
+    }
+
+    /**
+     * Run the fallback passes of grabArticle at the same time instead of one after another. Each pass gets
+     * its own copy of the document; the first one, in the usual order, that finds enough text wins and the
+     * others are cancelled. This trades CPU for latency on pages that need the fallbacks.
+     *
+     * @param speculativeExecutor where to run the passes, or null (the default) to run them one at a time
+     *            on the calling thread.
+     */
+    public void setSpeculativeExecutor(Executor speculativeExecutor) {
+        this.speculativeExecutor = speculativeExecutor;
+    }
+
+    public Executor getSpeculativeExecutor() {
+        return speculativeExecutor;
+    }
+
+    /**
+     * When reading all pages, start fetching the next page as soon as its link is found, and extract the
+     * current page while it arrives. The page reader has to be safe to use from two threads at once.
+     *
+     * @param prefetchExecutor where to run the fetches, or null (the default) to fetch each page after the
+     *            one before it has been extracted.
+     */
+    public void setPrefetchExecutor(Executor prefetchExecutor) {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    /**
+     * When reading all pages, if the next-page link on the first page is numbered (?page=2, /page/2/ and so
+     * on) and other links on the page are numbered the same way, fetch all of the pages in the series at
+     * once on the prefetch executor instead of following the links one page at a time. The pages are
+     * appended in order, stopping at the first page that can't be read, or that repeats the text of the page
+     * before it, or at the page limit. Without a prefetch executor this does nothing.
+     */
+    public void setFetchPageSeries(boolean fetchPageSeries) {
+        this.fetchPageSeries = fetchPageSeries;
+    }
+
+    public boolean isFetchPageSeries() {
+        return fetchPageSeries;
+    }
+
+    /**
+     * If the page reader is a {@link StreamPageReader}, fetch pages with {@link StreamPageReader#openPage(String)}
+     * and decode them as they are read, instead of with {@link PageReader#readPage(String)}, so that a page is
+     * never held as bytes and as text at once. The cost is that the reader picks the character set from the
+     * start of the page only, and a memory-mapping reader reads through a stream instead. Off by default.
+     */
+    public void setReadPageStreams(boolean readPageStreams) {
+        this.readPageStreams = readPageStreams;
+    }
+
+    public boolean isReadPageStreams() {
+        return readPageStreams;
+    }
+
+    /**
+     * @param maxPages the most pages, counting the first, to read when reading all pages, whether by following
+     *            next-page links or as a page series; 0 (the default) for no limit. Without a limit, a page
+     *            series, whose pages are all fetched at once, still stops at 10 pages.
+     */
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * @param maxContentLength when reading all pages, read no further page once the content of the pages
+     *            so far comes to this many characters; 0 (the default) for no limit. Pages arrive decoded, so
+     *            this counts characters rather than bytes.
+     */
+    public void setMaxContentLength(long maxContentLength) {
+        this.maxContentLength = maxContentLength;
+    }
+
+    public long getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    /**
+     * @param pageListener told about each page as it is added to the article, and able to stop there; null
+     *            (the default) for none.
+     */
+    public void setPageListener(PageListener pageListener) {
+        this.pageListener = pageListener;
+    }
+
+    public PageListener getPageListener() {
+        return pageListener;
+    }
+
+    /**
+     * @return the pages that make up the article, in order, from the last call to processDocument.
+     */
+    public List<ArticlePage> getPages() {
+        return pages;
+    }
+
+    /**
+     * Write the article text to the sink as each page is extracted, instead of keeping it; getArticleText is
+     * then null. The pages of a page series are the exception: each is kept until it has been compared with
+     * the page before it, so that a repeated page is not written. The sink is not flushed or closed, and a
+     * failure to write to it is reported as a PageReadException.
+     *
+     * @param textSink where the text goes, or null (the default) to keep it.
+     */
+    public void setTextSink(Appendable textSink) {
+        this.textSink = textSink;
+    }
+
+    public Appendable getTextSink() {
+        return textSink;
+    }
+
+    /**
+     * @param metrics where to report the time taken by each stage of an extraction and the counts; null
+     *            for nowhere, the default. Fetches and speculative passes report from their own threads.
+     */
+    public void setMetrics(ReadabilityMetrics metrics) {
+        this.metrics = metrics == null ? NoOpReadabilityMetrics.INSTANCE : metrics;
+    }
+
+    public ReadabilityMetrics getMetrics() {
+        return metrics;
+    }
+
 }
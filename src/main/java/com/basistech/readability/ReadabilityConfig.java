@@ -0,0 +1,212 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The settings for a {@link ReadabilityExtractor}. Instances are immutable; make them with a {@link Builder}.
+ * The page reader, the executors and the cache are shared by every extraction that uses the configuration,
+ * so they have to be safe to use from more than one thread.
+ */
+public final class ReadabilityConfig {
+    private final PageReader pageReader;
+    private final boolean readAllPages;
+    private final Executor speculativeExecutor;
+    private final Executor prefetchExecutor;
+    private final boolean fetchPageSeries;
+    private final int maxPages;
+    private final long maxContentLength;
+    private final ResultCache resultCache;
+    private final ReadabilityMetrics metrics;
+
+    private ReadabilityConfig(Builder builder) {
+        this.pageReader = builder.pageReader;
+        this.readAllPages = builder.readAllPages;
+        this.speculativeExecutor = builder.speculativeExecutor;
+        this.prefetchExecutor = builder.prefetchExecutor;
+        this.fetchPageSeries = builder.fetchPageSeries;
+        this.maxPages = builder.maxPages;
+        this.maxContentLength = builder.maxContentLength;
+        this.resultCache = builder.resultCache;
+        this.metrics = builder.metrics;
+    }
+
+    public PageReader getPageReader() {
+        return pageReader;
+    }
+
+    public boolean isReadAllPages() {
+        return readAllPages;
+    }
+
+    public Executor getSpeculativeExecutor() {
+        return speculativeExecutor;
+    }
+
+    public Executor getPrefetchExecutor() {
+        return prefetchExecutor;
+    }
+
+    public boolean isFetchPageSeries() {
+        return fetchPageSeries;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public long getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public ReadabilityMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * The settings that can change what an extraction comes up with, for keeping apart the cached results
+     * of different configurations. The reader, the executors, the cache and the metrics don't change it.
+     */
+    String getOutputSettings() {
+        return "readAllPages=" + readAllPages + ",fetchPageSeries=" + fetchPageSeries + ",maxPages="
+               + maxPages + ",maxContentLength=" + maxContentLength;
+    }
+
+    /**
+     * Collects settings for a {@link ReadabilityConfig}.
+     */
+    public static final class Builder {
+        private PageReader pageReader;
+        private boolean readAllPages;
+        private Executor speculativeExecutor;
+        private Executor prefetchExecutor;
+        private boolean fetchPageSeries;
+        private int maxPages;
+        private long maxContentLength;
+        private ResultCache resultCache;
+        private ReadabilityMetrics metrics = NoOpReadabilityMetrics.INSTANCE;
+
+        public Builder() {
+            //
+        }
+
+        /**
+         * Start from the settings of an existing configuration.
+         */
+        public Builder(ReadabilityConfig config) {
+            this.pageReader = config.pageReader;
+            this.readAllPages = config.readAllPages;
+            this.speculativeExecutor = config.speculativeExecutor;
+            this.prefetchExecutor = config.prefetchExecutor;
+            this.fetchPageSeries = config.fetchPageSeries;
+            this.maxPages = config.maxPages;
+            this.maxContentLength = config.maxContentLength;
+            this.resultCache = config.resultCache;
+            this.metrics = config.metrics;
+        }
+
+        /**
+         * @param pageReader fetches the pages. Required to read all pages, or to extract from a url without
+         *            content.
+         */
+        public Builder pageReader(PageReader pageReader) {
+            this.pageReader = pageReader;
+            return this;
+        }
+
+        /**
+         * @param readAllPages whether to follow next-page links and append the text of the following pages.
+         */
+        public Builder readAllPages(boolean readAllPages) {
+            this.readAllPages = readAllPages;
+            return this;
+        }
+
+        /**
+         * @param speculativeExecutor see {@link Readability#setSpeculativeExecutor(Executor)}.
+         */
+        public Builder speculativeExecutor(Executor speculativeExecutor) {
+            this.speculativeExecutor = speculativeExecutor;
+            return this;
+        }
+
+        /**
+         * @param prefetchExecutor see {@link Readability#setPrefetchExecutor(Executor)}.
+         */
+        public Builder prefetchExecutor(Executor prefetchExecutor) {
+            this.prefetchExecutor = prefetchExecutor;
+            return this;
+        }
+
+        /**
+         * @param fetchPageSeries see {@link Readability#setFetchPageSeries(boolean)}.
+         */
+        public Builder fetchPageSeries(boolean fetchPageSeries) {
+            this.fetchPageSeries = fetchPageSeries;
+            return this;
+        }
+
+        /**
+         * @param maxPages see {@link Readability#setMaxPages(int)}.
+         */
+        public Builder maxPages(int maxPages) {
+            this.maxPages = maxPages;
+            return this;
+        }
+
+        /**
+         * @param maxContentLength see {@link Readability#setMaxContentLength(long)}.
+         */
+        public Builder maxContentLength(long maxContentLength) {
+            this.maxContentLength = maxContentLength;
+            return this;
+        }
+
+        /**
+         * @param resultCache where to remember results by content, or null (the default) for no caching. Only
+         *            used when not reading all pages.
+         */
+        public Builder resultCache(ResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        /**
+         * @param metrics see {@link Readability#setMetrics(ReadabilityMetrics)}. It is shared by every
+         *            extraction, so it has to be thread-safe. Cache hits are not extractions, so they report
+         *            nothing but the fetch.
+         */
+        public Builder metrics(ReadabilityMetrics metrics) {
+            this.metrics = metrics == null ? NoOpReadabilityMetrics.INSTANCE : metrics;
+            return this;
+        }
+
+        public ReadabilityConfig build() {
+            if (pageReader == null && readAllPages) {
+                throw new IllegalStateException("A page reader is required to read all pages");
+            }
+            return new ReadabilityConfig(this);
+        }
+    }
+}
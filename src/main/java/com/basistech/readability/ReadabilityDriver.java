@@ -19,20 +19,19 @@
 package com.basistech.readability;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FilenameFilter;
-import java.io.IOException;
+import java.io.FileFilter;
+import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
- * At the moment this class will take all html files from the flat directory: ./src/test/resources/htmlInput/
- * and write them to: ./src/test/resources/textOutput/
+ * By default this class will take all html files from the directory tree under: ./src/test/resources/htmlInput/
+ * and write them to the same tree under: ./target/
  * 
- * In the future, a nice thing to do might be to abstract this so that it can process just about anything you
- * throw in there.  It's a matter of using the appropriate PageReaders.  Also, having the directories be hard-coded
- * might be a problem in the future.
+ * The input directory, output directory and number of extraction threads can be given as arguments, in that
+ * order. The pages are run through a BatchProcessor, which reads, extracts and writes them in parallel and
+ * reports throughput and per-stage latency at the end.
  */
 
 public final class ReadabilityDriver {
@@ -47,59 +46,41 @@ public final class ReadabilityDriver {
     //private constructor
     private ReadabilityDriver() { }
     
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws InterruptedException {
         
-        //input directory file
-        File inputDir = new File(INPUT_PATH);
+        //input and output directories
+        File inputDir = new File(args.length > 0 ? args[0] : INPUT_PATH);
+        File outputDir = new File(args.length > 1 ? args[1] : OUTPUT_PATH);
         
-        //create the FilePageReader for Readability
-        FilePageReader reader = new FilePageReader();
-        reader.setBaseDirectory(inputDir);
+        //create the page reader for Readability; the paths we give it are complete.
+        NioFilePageReader reader = new NioFilePageReader();
+        reader.setCharsetDetector(new LayeredCharsetDetector());
+        HistogramReadabilityMetrics metrics = new HistogramReadabilityMetrics();
+        reader.setMetrics(metrics);
         
-        //instantiate Readability and set reader
-        Readability readability = new Readability();
-        readability.setPageReader(reader);
-        readability.setReadAllPages(false);
-        reader.setCharsetDetector(new TikaCharsetDetector());
-        
-        //instantiate a file array
-        File[] htmlFiles;
-        
-        //get all html files in directory
-        if (inputDir.exists()) {
-            htmlFiles = inputDir.listFiles(new FilenameFilter() {
-                public boolean accept(File dir, String name) {
-                    return name.matches(".*\\.html$");
-                }
-            });
-        } else {
-            htmlFiles = new File[0];
+        ReadabilityConfig config = new ReadabilityConfig.Builder()
+            .pageReader(reader)
+            .readAllPages(false)
+            .metrics(metrics)
+            .build();
+        BatchProcessor processor = new BatchProcessor(config);
+        processor.setInputDirectory(inputDir);
+        processor.setOutputDirectory(outputDir);
+        if (args.length > 2) {
+            processor.setWorkerThreads(Integer.parseInt(args[2]));
         }
         
-        //iterate over the files and run Readability on them
-        for (File page : htmlFiles) {
-            
-            //get the page path
-            String path = page.getPath();
-            
-            //process the page
-            try {
-                LOG.info("processing page: " + path);
-                readability.processDocument(path);
-            } catch (PageReadException e) {
-                LOG.error("PageReadError while processing: " + path);
-                e.printStackTrace();
-                continue;
+        //walk all html files under the input directory
+        Iterator<File> htmlFiles = new FileTreeIterator(inputDir, new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().matches(".*\\.html$");
             }
-            
-            //write the output, forcing a sentence break between title and body with \u2029.
-            String title = readability.getTitle().trim() + "\u2029";
-            String content = readability.getArticleText();
-            String returnText = OUTPUT_PATH + page.getName().replaceAll("html$", "txt");
-            FileOutputStream fos = new FileOutputStream(returnText);
-            fos.write((title + System.getProperty("line.separator") + content).getBytes("UTF8"));
-            fos.flush();
-            fos.close();
-        }
+        });
+        
+        LOG.info("processing pages from " + inputDir + " with " + processor.getWorkerThreads() + " threads");
+        BatchProcessor.Summary summary = processor.process(htmlFiles);
+        LOG.info(summary.toString());
+        LOG.info(metrics.toString());
+        LOG.info(ClassificationCache.getShared().toString());
     }
 }
@@ -0,0 +1,224 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A thread-safe front end to {@link Readability}. One of these can be shared by any number of threads:
+ * the configuration is immutable, and all of the state of an extraction lives in the objects made for that
+ * call, which are not shared.
+ */
+public final class ReadabilityExtractor {
+    private final ReadabilityConfig config;
+
+    public ReadabilityExtractor(ReadabilityConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Fetch a page (and, if so configured, the pages after it) and extract the article.
+     *
+     * @param url the page to start from.
+     * @return the results.
+     */
+    public ExtractionResult extract(String url) throws PageReadException {
+        requirePageReader();
+        if (usesCache()) {
+            long start = System.nanoTime();
+            String content = config.getPageReader().readPage(url);
+            config.getMetrics().recordTime(ReadabilityMetrics.Stage.FETCH, System.nanoTime() - start);
+            return extract(url, content);
+        }
+        Readability readability = newReadability();
+        readability.processDocument(url);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Extract the article from a page that the caller has already read.
+     *
+     * @param url the url the content came from.
+     * @param content the decoded content.
+     * @return the results.
+     */
+    public ExtractionResult extract(String url, String content) throws PageReadException {
+        String key = null;
+        if (usesCache() && content != null) {
+            key = ResultCache.key(content, config.getOutputSettings());
+            ExtractionResult cached = config.getResultCache().get(key, url);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Readability readability = newReadability();
+        readability.processDocument(url, content);
+        ExtractionResult result = readability.getResult(url);
+        if (key != null) {
+            config.getResultCache().put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Extract the article from bytes the caller already has.
+     *
+     * @param url the url the content came from.
+     * @param data the content.
+     * @param charset the encoding of the content.
+     * @return the results.
+     */
+    public ExtractionResult extract(String url, byte[] data, Charset charset) throws PageReadException {
+        if (usesCache()) {
+            return extract(url, new String(data, charset));
+        }
+        Readability readability = newReadability();
+        readability.processDocument(url, data, charset);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Extract the article from the remaining bytes of a buffer, leaving its position alone.
+     *
+     * @param url the url the content came from.
+     * @param data the content.
+     * @param charset the encoding of the content.
+     * @return the results.
+     */
+    public ExtractionResult extract(String url, ByteBuffer data, Charset charset) throws PageReadException {
+        if (usesCache()) {
+            return extract(url, PageDecoder.decode(data, charset));
+        }
+        Readability readability = newReadability();
+        readability.processDocument(url, data, charset);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Extract the article from a stream, decoding it as it is read. The stream is not closed.
+     *
+     * @param url the url the content came from.
+     * @param data the content.
+     * @param charset the encoding of the content.
+     * @return the results.
+     */
+    public ExtractionResult extract(String url, InputStream data, Charset charset) throws PageReadException {
+        if (usesCache()) {
+            try {
+                return extract(url, PageDecoder.decode(data, charset, -1));
+            } catch (IOException e) {
+                throw new PageReadException("Failed to read " + url, e);
+            }
+        }
+        Readability readability = newReadability();
+        readability.processDocument(url, data, charset);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Fetch a page (and, if so configured, the pages after it) and write the article text to out as it is
+     * extracted. The result has everything but the text. The result cache is not used.
+     *
+     * @param url the page to start from.
+     * @param out where the text goes. It is not flushed or closed.
+     * @return the results, without the text.
+     */
+    public ExtractionResult extract(String url, Appendable out) throws PageReadException {
+        requirePageReader();
+        Readability readability = newReadability();
+        readability.setTextSink(out);
+        readability.processDocument(url);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Extract the article from a page that the caller has already read, writing the text to out as it is
+     * extracted. The result has everything but the text. The result cache is not used.
+     *
+     * @param url the url the content came from.
+     * @param content the decoded content.
+     * @param out where the text goes. It is not flushed or closed.
+     * @return the results, without the text.
+     */
+    public ExtractionResult extract(String url, String content, Appendable out) throws PageReadException {
+        Readability readability = newReadability();
+        readability.setTextSink(out);
+        readability.processDocument(url, content);
+        return readability.getResult(url);
+    }
+
+    /**
+     * Extract the article from a page that the caller has already read, encoding the text onto a channel as
+     * it is extracted. Everything written has reached the channel when this returns; the channel is not
+     * closed.
+     *
+     * @param url the url the content came from.
+     * @param content the decoded content.
+     * @param out where the text goes.
+     * @param charset the encoding for the text.
+     * @return the results, without the text.
+     */
+    public ExtractionResult extract(String url, String content, WritableByteChannel out, Charset charset)
+        throws PageReadException {
+        Writer writer = Channels.newWriter(out, charset.newEncoder(), -1);
+        ExtractionResult result = extract(url, content, writer);
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new PageReadException("Failed to write the text of " + url, e);
+        }
+        return result;
+    }
+
+    /*
+     * With readAllPages, the result depends on what the other pages say, not just the content of the first.
+     */
+    private boolean usesCache() {
+        return config.getResultCache() != null && !config.isReadAllPages();
+    }
+
+    private void requirePageReader() {
+        if (config.getPageReader() == null) {
+            throw new IllegalStateException("A page reader is required to fetch pages");
+        }
+    }
+
+    private Readability newReadability() {
+        Readability readability = new Readability();
+        readability.setPageReader(config.getPageReader());
+        readability.setReadAllPages(config.isReadAllPages());
+        readability.setSpeculativeExecutor(config.getSpeculativeExecutor());
+        readability.setPrefetchExecutor(config.getPrefetchExecutor());
+        readability.setFetchPageSeries(config.isFetchPageSeries());
+        readability.setMaxPages(config.getMaxPages());
+        readability.setMaxContentLength(config.getMaxContentLength());
+        readability.setMetrics(config.getMetrics());
+        return readability;
+    }
+
+    public ReadabilityConfig getConfig() {
+        return config;
+    }
+}
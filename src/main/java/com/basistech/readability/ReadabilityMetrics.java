@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+/**
+ * Where an extraction reports how long its stages took and how much work it did, to be passed on to a
+ * metrics system. Set one with {@link Readability#setMetrics(ReadabilityMetrics)} or
+ * {@link ReadabilityConfig.Builder#metrics(ReadabilityMetrics)}; charset detection is timed by the page
+ * reader, with {@link AbstractPageReader#setMetrics(ReadabilityMetrics)}. The default,
+ * {@link NoOpReadabilityMetrics}, throws everything away.
+ * <p>
+ * Calls come from whatever thread did the work, including prefetch and speculative threads, often from
+ * several at once, so implementations have to be thread-safe. They are made in the middle of an extraction,
+ * so they had better be quick.
+ */
+public interface ReadabilityMetrics {
+    /**
+     * The timed stages. A page goes through each of them at most once, apart from FETCH and
+     * CHARSET_DETECTION, which happen wherever a page is read, and PREP_ARTICLE, which happens once in each
+     * grabArticle pass that runs.
+     */
+    enum Stage {
+        /** {@link PageReader#readPage(String)}, charset detection included. */
+        FETCH,
+        /** Picking the charset of the bytes of a page. */
+        CHARSET_DETECTION,
+        /** Parsing the decoded content into a DOM. */
+        PARSE,
+        /** Removing scripts and the rest of the clean up before the article is looked for. */
+        PREPARE_DOCUMENT,
+        /** Looking for the link to the next page. Only done when reading all pages. */
+        FIND_NEXT_PAGE_LINK,
+        /** Finding the article, all passes included. */
+        GRAB_ARTICLE,
+        /** Cleaning up the content a pass has collected. */
+        PREP_ARTICLE,
+        /** Turning the article into text. */
+        DISPLAY_TEXT
+    }
+
+    /**
+     * The counts.
+     */
+    enum Counter {
+        /** Pages parsed. */
+        PAGES,
+        /** Characters of content parsed. */
+        INPUT_CHARS,
+        /** Elements under the body when grabArticle starts. */
+        DOM_ELEMENTS,
+        /** grabArticle passes that had to be run again with fewer heuristics. */
+        RETRIES,
+        /** Pages that could not be handled: no body, or frames. */
+        IMPOSSIBLE,
+        /** Characters of article text produced. */
+        OUTPUT_CHARS
+    }
+
+    /**
+     * @param stage the stage.
+     * @param nanos how long it took.
+     */
+    void recordTime(Stage stage, long nanos);
+
+    /**
+     * Report one pass of grabArticle, which is also counted in GRAB_ARTICLE.
+     *
+     * @param pass the pass, counting from 0; later passes turn off more of the heuristics.
+     * @param nanos how long it took.
+     * @param foundArticle whether it found enough text.
+     */
+    void recordPass(int pass, long nanos, boolean foundArticle);
+
+    /**
+     * @param counter the counter.
+     * @param amount how much to add to it.
+     */
+    void increment(Counter counter, long amount);
+}
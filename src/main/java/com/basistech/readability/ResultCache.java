@@ -0,0 +1,319 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers extraction results by the content they came from, so that a page that turns up again (a
+ * syndicated copy, a mirror, a retry) doesn't have to be parsed and extracted again. Results are kept in
+ * memory, least recently used first out once they add up to more than a given size, and optionally on disk
+ * as well, where they survive restarts.
+ * <p>
+ * Only single-page extractions are cached: with readAllPages, the result depends on other pages too. One
+ * cache can be shared by any number of threads and extractors.
+ */
+public final class ResultCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResultCache.class);
+    /*
+     * Part of every key. Change this when a change to the extraction changes its output, so that old disk
+     * entries stop matching.
+     */
+    private static final int FORMAT = 2;
+    // a rough allowance for the objects around the strings in a cached result.
+    private static final int ENTRY_OVERHEAD = 200;
+
+    private final long maxMemoryBytes;
+    // least recently used first.
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long memoryBytes;
+    private DiskLruStore disk;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry {
+        private final ExtractionResult result;
+        private final long bytes;
+
+        Entry(ExtractionResult result, long bytes) {
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * @param maxMemoryBytes roughly how much memory the cached results may take.
+     */
+    public ResultCache(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Keep results on disk as well as in memory.
+     *
+     * @param directory where to keep them. Results already there are used.
+     * @param maxDiskBytes the most disk space to use.
+     */
+    public synchronized void setDiskTier(File directory, long maxDiskBytes) throws IOException {
+        disk = new DiskLruStore(directory, maxDiskBytes);
+    }
+
+    /**
+     * A key for some content, extracted with some settings. The two halves are different 64-bit hashes, so
+     * an accidental match would need both to collide at once, and the length as well.
+     *
+     * @param settings what the configuration says about the output; see {@link ReadabilityConfig}. Results
+     *            made with other settings don't match, even for the same content.
+     */
+    static String key(String content, String settings) {
+        long[] h = {0xcbf29ce484222325L, 0x9e3779b97f4a7c15L};
+        hash(h, settings);
+        // a separator, so that the settings can't run on into the content.
+        hash(h, "\0");
+        hash(h, content);
+        // each half padded to full width, so that where one ends and the other starts is fixed.
+        return FORMAT + "-" + String.format("%016x%016x", h[0], h[1]) + "-" + Integer.toHexString(content.length());
+    }
+
+    private static void hash(long[] h, String string) {
+        long h1 = h[0];
+        long h2 = h[1];
+        int length = string.length();
+        for (int x = 0; x < length; x++) {
+            char c = string.charAt(x);
+            h1 = (h1 ^ c) * 0x100000001b3L;
+            h2 = Long.rotateLeft(h2 + c * 0xc2b2ae3d27d4eb4fL, 31) * 0x9e3779b97f4a7c15L;
+        }
+        h[0] = h1;
+        h[1] = h2;
+    }
+
+    /**
+     * @return the cached result, relabelled with the given url, or null.
+     */
+    ExtractionResult get(String key, String url) {
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.result.withUrl(url);
+        }
+        DiskLruStore diskTier = getDisk();
+        if (diskTier != null) {
+            ExtractionResult result = readFromDisk(diskTier, key);
+            if (result != null) {
+                diskHits.incrementAndGet();
+                putInMemory(key, result);
+                return result.withUrl(url);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(String key, ExtractionResult result) {
+        putInMemory(key, result);
+        DiskLruStore diskTier = getDisk();
+        if (diskTier != null) {
+            writeToDisk(diskTier, key, result);
+        }
+    }
+
+    private synchronized DiskLruStore getDisk() {
+        return disk;
+    }
+
+    private synchronized void putInMemory(String key, ExtractionResult result) {
+        long bytes = sizeOf(result);
+        if (bytes > maxMemoryBytes) {
+            return;
+        }
+        Entry old = memory.put(key, new Entry(result, bytes));
+        memoryBytes += bytes - (old == null ? 0 : old.bytes);
+        Iterator<Map.Entry<String, Entry>> entries = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && entries.hasNext()) {
+            memoryBytes -= entries.next().getValue().bytes;
+            entries.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long sizeOf(ExtractionResult result) {
+        long chars = length(result.getTitle()) + length(result.getArticleText()) + length(result.getNextPageLink());
+        for (String image : result.getXmlImages()) {
+            chars += image.length();
+        }
+        return ENTRY_OVERHEAD + 2 * chars;
+    }
+
+    private static int length(String string) {
+        return string == null ? 0 : string.length();
+    }
+
+    private ExtractionResult readFromDisk(DiskLruStore diskTier, String key) {
+        File file = diskTier.get(key);
+        if (file == null) {
+            return null;
+        }
+        InputStream input = null;
+        try {
+            // nothing in the file is longer than the file; a damaged length must not become a huge array.
+            long fileLength = file.length();
+            input = new BufferedInputStream(new FileInputStream(file));
+            DataInputStream data = new DataInputStream(input);
+            boolean impossible = data.readBoolean();
+            String title = readString(data, fileLength);
+            String articleText = readString(data, fileLength);
+            String nextPageLink = readString(data, fileLength);
+            int imageCount = data.readInt();
+            // each image takes at least its length.
+            if (imageCount < 0 || imageCount > fileLength / 4) {
+                throw new IOException("Bad image count " + imageCount + " in a file of " + fileLength
+                                      + " bytes");
+            }
+            List<String> xmlImages = new ArrayList<String>(imageCount);
+            for (int x = 0; x < imageCount; x++) {
+                xmlImages.add(readString(data, fileLength));
+            }
+            return new ExtractionResult(null, title, articleText, nextPageLink, impossible, xmlImages);
+        } catch (IOException e) {
+            LOG.warn("Dropping unreadable cache file " + file, e);
+            diskTier.remove(key);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void writeToDisk(DiskLruStore diskTier, String key, ExtractionResult result) {
+        File temp = null;
+        OutputStream output = null;
+        try {
+            temp = diskTier.newTempFile(key);
+            output = new BufferedOutputStream(new FileOutputStream(temp));
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeBoolean(result.isImpossible());
+            writeString(data, result.getTitle());
+            writeString(data, result.getArticleText());
+            writeString(data, result.getNextPageLink());
+            data.writeInt(result.getXmlImages().size());
+            for (String image : result.getXmlImages()) {
+                writeString(data, image);
+            }
+            data.close();
+            output = null;
+            diskTier.commit(key, temp);
+            temp = null;
+        } catch (IOException e) {
+            LOG.warn("Failed to write cached result " + key, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /* writeUTF can't take more than 64K, which article text can easily be. */
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        if (string == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(AbstractPageReader.UTF8.name());
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data, long fileLength) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > fileLength) {
+            throw new IOException("Bad string length " + length + " in a file of " + fileLength + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, AbstractPageReader.UTF8);
+    }
+
+    /**
+     * @return lookups answered from memory.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return lookups answered from disk.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return results dropped from memory to make room.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return results dropped from disk to make room.
+     */
+    public long getDiskEvictions() {
+        DiskLruStore diskTier = getDisk();
+        return diskTier == null ? 0 : diskTier.getEvictions();
+    }
+
+    /**
+     * @return roughly how much memory the cached results take.
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+}
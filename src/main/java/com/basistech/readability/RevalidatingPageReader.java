@@ -0,0 +1,34 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+/**
+ * A page reader that can ask whether a page it read before has changed, as HTTP does with If-None-Match and
+ * If-Modified-Since.
+ */
+public interface RevalidatingPageReader extends PageReader {
+    /**
+     * Read a page, or check a copy of it.
+     * @param url
+     * @param cached the copy we have, or null.
+     * @return the cached copy (with fresh validators) if the page hasn't changed, the new page if it has, or
+     *         null if there's some problem or another.
+     */
+    CachedPage readPage(String url, CachedPage cached) throws PageReadException;
+}
@@ -0,0 +1,433 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+/**
+ * Does to a DOM what writing out the content of an element with html() and reading it back in with
+ * html(String) does, without producing or parsing any HTML. Several steps of the extraction used to do exactly
+ * that; the output depends on what it does to the text, so that is kept.
+ * <p>
+ * Pretty printing adds indentation around blocks and collapses white space, the parser turns each run of
+ * text between two tags into a single text node, and html() trims the ends. Those are the only changes the
+ * round trip makes to a tree the parser could have built: text nodes are rewritten, merged, added and
+ * dropped, and everything else stays where it is. The tree also keeps its elements, where the round trip
+ * would have replaced them with copies.
+ * <p>
+ * When the parser would not put an element back under its parent (a p around a div, say, which the
+ * extraction creates itself), or the content includes something it reads specially (script, style, title,
+ * textarea, html, head or body), the real round trip is done instead. Whether a tag can be nested directly in
+ * another is found out by asking the parser once per pair of tags.
+ */
+final class RoundTrip {
+    private static final String FRAGMENT = "body";
+    // parent + " " + child -> whether the relaxed fragment parser keeps the child directly in the parent.
+    private static final ConcurrentMap<String, Boolean> NESTING = new ConcurrentHashMap<String, Boolean>();
+
+    private final boolean prettyPrint;
+    private final int indentAmount;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean changed;
+
+    private RoundTrip(Element context) {
+        Document owner = context.ownerDocument();
+        Document.OutputSettings settings = owner != null
+            ? owner.outputSettings() : new Document("").outputSettings();
+        prettyPrint = settings.prettyPrint();
+        indentAmount = settings.indentAmount();
+    }
+
+    /**
+     * The same as element.html(element.html()).
+     *
+     * @return false if the content was already in the shape the round trip gives it.
+     */
+    static boolean reflow(Element element) {
+        if (!reproducible(element)) {
+            element.html(element.html());
+            return true;
+        }
+        RoundTrip roundTrip = new RoundTrip(element);
+        roundTrip.rewrite(element, element.tag(), preservesWhitespace(element), 0, true);
+        return roundTrip.changed;
+    }
+
+    /**
+     * The same as to.html(from.html()) for an empty element to: the content of from is copied, and the copy is
+     * reshaped the way the round trip would have left it.
+     */
+    static void copyContent(Element from, Element to) {
+        if (!reproducible(from)) {
+            to.html(from.html());
+            return;
+        }
+        for (Node child : from.childNodes()) {
+            to.appendChild(child.clone());
+        }
+        new RoundTrip(from).rewrite(to, from.tag(), preservesWhitespace(from), 0, true);
+    }
+
+    /**
+     * Lay out the children of target as the parser would after they were written out at the given depth.
+     * Formatting decisions follow tag and preserve, which belong to the element that was written out; when
+     * copying, that is not target itself.
+     */
+    private void rewrite(Element target, Tag tag, boolean preserve, int depth, boolean top) {
+        List<Node> children = target.childNodes();
+        int count = children.size();
+        boolean block = tag.formatAsBlock();
+        // only built when a text node has to be added or dropped; otherwise the text is changed in place.
+        List<Node> layout = null;
+        int gapStart = 0;
+        boolean first = true;
+        for (int x = 0; x < count; x++) {
+            Node child = children.get(x);
+            if (child instanceof TextNode) {
+                TextNode text = (TextNode)child;
+                String html = text.getWholeText();
+                if (prettyPrint && !preserve) {
+                    html = normaliseWhitespace(html);
+                }
+                if (prettyPrint && x == 0 && block && !text.isBlank()) {
+                    indent(depth);
+                }
+                pending.append(html);
+                continue;
+            }
+            if (prettyPrint
+                && (!(child instanceof Element) || block || ((Element)child).tag().formatAsBlock())) {
+                indent(depth);
+            }
+            layout = fillGap(target, gapStart, x, take(first && top, false), layout);
+            if (layout != null) {
+                layout.add(child);
+            }
+            first = false;
+            if (child instanceof Element) {
+                Element element = (Element)child;
+                boolean preserveBelow = preserve || element.tag().preserveWhitespace();
+                rewrite(element, element.tag(), preserveBelow, depth + 1, false);
+            }
+            gapStart = x + 1;
+        }
+        if (!top && prettyPrint && count > 0 && block) {
+            indent(depth - 1);
+        }
+        layout = fillGap(target, gapStart, count, take(first && top, top), layout);
+        if (layout != null) {
+            replaceChildren(target, layout);
+        }
+    }
+
+    /**
+     * StringUtil.normaliseWhitespace, as it behaves on escaped text. It has to be done a char at a time:
+     * html() escapes surrogates before normalising, and the jsoup version doubles the low surrogate of a pair
+     * it sees unescaped.
+     */
+    static String normaliseWhitespace(String text) {
+        StringBuilder normalised = null;
+        boolean lastWasWhite = false;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (normalised == null && (lastWasWhite || c != ' ')) {
+                    normalised = new StringBuilder(length).append(text, 0, i);
+                }
+                if (!lastWasWhite && normalised != null) {
+                    normalised.append(' ');
+                }
+                lastWasWhite = true;
+            } else {
+                if (normalised != null) {
+                    normalised.append(c);
+                }
+                lastWasWhite = false;
+            }
+        }
+        return normalised == null ? text : normalised.toString();
+    }
+
+    private void indent(int depth) {
+        pending.append('\n').append(StringUtil.padding(depth * indentAmount));
+    }
+
+    /**
+     * @return the text gathered since the last tag, trimmed as String.trim() would at the ends of the whole
+     *         html.
+     */
+    private String take(boolean trimStart, boolean trimEnd) {
+        int start = 0;
+        int end = pending.length();
+        if (trimStart) {
+            while (start < end && pending.charAt(start) <= ' ') {
+                start++;
+            }
+        }
+        if (trimEnd) {
+            while (end > start && pending.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        }
+        String text = pending.substring(start, end);
+        pending.setLength(0);
+        return text;
+    }
+
+    /**
+     * Make the text nodes at [from, to) of target, all of which sit between the same two tags, into the single
+     * text node the parser would make of the given text, or none if it is empty.
+     *
+     * @return the new list of children so far, once one is needed.
+     */
+    private List<Node> fillGap(Element target, int from, int to, String text, List<Node> layout) {
+        List<Node> children = target.childNodes();
+        boolean empty = text.length() == 0;
+        if (layout == null && to - from == (empty ? 0 : 1)) {
+            if (!empty) {
+                TextNode existing = (TextNode)children.get(from);
+                if (!text.equals(existing.getWholeText())) {
+                    existing.text(text);
+                    changed = true;
+                }
+            }
+            return null;
+        }
+        if (layout == null) {
+            layout = new ArrayList<Node>(children.size() + 1);
+            layout.addAll(children.subList(0, from));
+        }
+        if (!empty) {
+            if (from < to) {
+                TextNode existing = (TextNode)children.get(from);
+                existing.text(text);
+                layout.add(existing);
+            } else {
+                layout.add(new TextNode(text, target.baseUri()));
+            }
+        }
+        changed = true;
+        return layout;
+    }
+
+    /*
+     * appendChild takes a node out of its old parent by its index, which is wrong once the parent has been
+     * emptied, so each old child is first swapped out for a placeholder; that is cheap, where removing them
+     * one at a time renumbers the rest every time.
+     */
+    private static void replaceChildren(Element target, List<Node> layout) {
+        List<Node> children = target.childNodes();
+        for (int x = 0; x < children.size(); x++) {
+            children.get(x).replaceWith(new TextNode("", ""));
+        }
+        target.empty();
+        for (Node node : layout) {
+            target.appendChild(node);
+        }
+    }
+
+    private static boolean preservesWhitespace(Element element) {
+        for (Element e = element; e != null; e = e.parent()) {
+            if (e.tag().preserveWhitespace()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the parser would build the content of the element back up as it is.
+     */
+    private static boolean reproducible(Element element) {
+        return reproducible(element, FRAGMENT);
+    }
+
+    private static boolean reproducible(Element element, String parentName) {
+        for (Node child : element.childNodes()) {
+            if (child instanceof Element) {
+                Element childElement = (Element)child;
+                Tag tag = childElement.tag();
+                if (tag.isData() || isReadSpecially(tag.getName()) || !canNest(parentName, tag)
+                    || !reproducible(childElement, tag.getName())) {
+                    return false;
+                }
+            } else if (!(child instanceof TextNode) && !(child instanceof Comment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isReadSpecially(String name) {
+        return "title".equals(name) || "textarea".equals(name) || "html".equals(name) || "head".equals(name)
+            || "body".equals(name);
+    }
+
+    private static boolean canNest(String parentName, Tag child) {
+        Tag parent = Tag.valueOf(parentName);
+        // all unknown tags behave alike.
+        String key = (parent.isKnownTag() ? parentName : "") + " "
+                     + (child.isKnownTag() ? child.getName() : "");
+        Boolean known = NESTING.get(key);
+        if (known == null) {
+            known = Boolean.valueOf(probe(parentName, child.getName()));
+            NESTING.putIfAbsent(key, known);
+        }
+        return known.booleanValue();
+    }
+
+    private static boolean probe(String parentName, String childName) {
+        String childHtml = "<" + childName + "></" + childName + ">";
+        if (FRAGMENT.equals(parentName)) {
+            Element body = Parser.parseBodyFragmentRelaxed(childHtml, "").body();
+            return isOnlyChild(body, childName);
+        }
+        String html = "<" + parentName + ">" + childHtml + "</" + parentName + ">";
+        Element body = Parser.parseBodyFragmentRelaxed(html, "").body();
+        return isOnlyChild(body, parentName) && isOnlyChild(body.child(0), childName);
+    }
+
+    private static boolean isOnlyChild(Element parent, String name) {
+        return parent.childNodes().size() == 1 && parent.childNode(0) instanceof Element
+               && name.equals(((Element)parent.childNode(0)).tagName());
+    }
+
+    /**
+     * A run of round trips, each at the nearest p above some node, as handleDoubleBr does them. Each round
+     * trip used to replace everything below its element with copies, and the nodes that were still to be
+     * visited were the originals, detached. Looking up from one of those found the p it was under when it was
+     * cut off; if that p had since been replaced as well, the round trip went to the detached copy and changed
+     * nothing in the document. Since elements are no longer replaced, this remembers when each round trip
+     * happened, to tell when that would have been the case.
+     * <p>
+     * It also skips the work of a round trip that is known to change nothing: one at the same element as a
+     * previous round trip that changed nothing, with nothing changed anywhere since. Runs of br + br in one
+     * place send every one of them to the same p, so this is what keeps that from being quadratic.
+     */
+    static final class Replay {
+        private static final int NEVER = Integer.MAX_VALUE;
+
+        // element -> times it had a round trip done at it, in increasing order.
+        private final Map<Element, List<Integer>> roundTrips = new IdentityHashMap<Element, List<Integer>>();
+        private final Map<Element, Integer> settledAt = new IdentityHashMap<Element, Integer>();
+        private int time;
+        private int changes;
+        private boolean targetDetached;
+
+        /**
+         * @return the nearest p above the node, as the node would have found it; null if there is none.
+         */
+        Element paragraphAbove(Element node) {
+            int seenAt = 0;
+            Element child = node;
+            Element parent = node.parent();
+            while (parent != null) {
+                // when child was cut off from the document; its parent is the one it had then.
+                seenAt = replacedAt(child, seenAt);
+                if ("p".equals(parent.tagName())) {
+                    targetDetached = replacedAt(parent, seenAt) != NEVER;
+                    return parent;
+                }
+                child = parent;
+                parent = parent.parent();
+            }
+            targetDetached = false;
+            return null;
+        }
+
+        /**
+         * Note a change to the document made by someone else.
+         */
+        void changed() {
+            changes++;
+        }
+
+        /**
+         * Do the round trip at the element paragraphAbove just returned or, if it found none, at the element
+         * that was just wrapped in a new p.
+         */
+        void reflow(Element element) {
+            if (targetDetached) {
+                return;
+            }
+            time++;
+            List<Integer> times = roundTrips.get(element);
+            if (times == null) {
+                times = new ArrayList<Integer>(2);
+                roundTrips.put(element, times);
+            }
+            times.add(Integer.valueOf(time));
+            Integer settled = settledAt.get(element);
+            if (settled != null && settled.intValue() == changes) {
+                return;
+            }
+            if (RoundTrip.reflow(element)) {
+                changes++;
+            } else {
+                settledAt.put(element, Integer.valueOf(changes));
+            }
+        }
+
+        /**
+         * @return the first time, not before since, at which a round trip was done above the node.
+         */
+        private int replacedAt(Element node, int since) {
+            if (since == NEVER) {
+                return NEVER;
+            }
+            int first = NEVER;
+            for (Element above = node.parent(); above != null; above = above.parent()) {
+                List<Integer> times = roundTrips.get(above);
+                if (times != null) {
+                    first = Math.min(first, firstAtLeast(times, since));
+                }
+            }
+            return first;
+        }
+
+        private static int firstAtLeast(List<Integer> times, int since) {
+            int low = 0;
+            int high = times.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times.get(mid).intValue() < since) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low < times.size() ? times.get(low).intValue() : NEVER;
+        }
+    }
+}
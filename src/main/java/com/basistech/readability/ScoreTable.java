@@ -0,0 +1,106 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Content scores for one pass of the extraction. The javascript keeps these as properties on the DOM nodes;
+ * we used to keep them as attributes, which meant formatting and parsing doubles all the time and leaving
+ * junk in the tree. Instead, each element that gets scored is given a dense index, and the scores live in a
+ * primitive array. Elements are keyed by identity; jsoup's equals/hashCode look at the parent and the
+ * attributes, which is both slow and wrong for this purpose.
+ */
+final class ScoreTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<Element, Integer> indices;
+    private double[] scores;
+    private final BitSet initialized;
+
+    ScoreTable() {
+        indices = new IdentityHashMap<Element, Integer>();
+        scores = new double[INITIAL_CAPACITY];
+        initialized = new BitSet(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Forget everything, keeping the storage for the next pass.
+     */
+    void clear() {
+        if (!indices.isEmpty()) {
+            Arrays.fill(scores, 0, indices.size(), 0.0);
+            indices.clear();
+        }
+        initialized.clear();
+    }
+
+    /**
+     * @return true if a score has ever been recorded for this element.
+     */
+    boolean isScored(Element node) {
+        return indices.containsKey(node);
+    }
+
+    double get(Element node) {
+        Integer index = indices.get(node);
+        if (index == null) {
+            return 0;
+        }
+        return scores[index.intValue()];
+    }
+
+    void set(Element node, double score) {
+        scores[indexOf(node)] = score;
+    }
+
+    void increment(Element node, double score) {
+        scores[indexOf(node)] += score;
+    }
+
+    /**
+     * @return true if initializeNode has been applied to this element.
+     */
+    boolean isInitialized(Element node) {
+        Integer index = indices.get(node);
+        return index != null && initialized.get(index.intValue());
+    }
+
+    void markInitialized(Element node) {
+        initialized.set(indexOf(node));
+    }
+
+    private int indexOf(Element node) {
+        Integer index = indices.get(node);
+        if (index == null) {
+            int next = indices.size();
+            if (next == scores.length) {
+                scores = Arrays.copyOf(scores, next * 2);
+            }
+            index = Integer.valueOf(next);
+            indices.put(node, index);
+        }
+        return index.intValue();
+    }
+}
@@ -0,0 +1,34 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+/**
+ * A page reader that can hand over the content of a page as a stream, rather than reading and decoding it into
+ * a String itself. {@link Readability#processDocument(String, java.io.InputStream, java.nio.charset.Charset)}
+ * can then decode it directly into the text that is parsed.
+ */
+public interface StreamPageReader extends PageReader {
+    /**
+     * Open a page. The character set is chosen in the same way as for {@link #readPage(String)}, except that
+     * detection only looks at the start of the page.
+     * @param url
+     * @return the open page, or null if there's some problem or another.
+     */
+    PageStream openPage(String url) throws PageReadException;
+}
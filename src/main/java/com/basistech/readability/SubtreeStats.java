@@ -0,0 +1,456 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.basistech.readability;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+/**
+ * Per-element statistics about the text under an element: the length of {@link Element#text()}, the length
+ * of the text of the links, commas, and the number of some interesting descendant tags. The scoring and
+ * cleaning code used to get all of this by calling text() and getElementsByTag over and over on the same
+ * subtrees. Here we compute everything bottom-up, once per element, into primitive arrays, and recompute
+ * only the ancestors of nodes that change.
+ * <p>
+ * The numbers have to agree exactly with what jsoup's text() would produce, so this models its whitespace
+ * handling: each text node is whitespace-normalized unless some enclosing element preserves whitespace, a
+ * text node loses its leading space if the text so far ends in a space, a block element gets a space in
+ * front of it if the text so far does not end in one, and the whole thing is trimmed. That means that what
+ * an element contributes to its parent depends on what came before it, so we keep a summary of each
+ * element's text for each of the three situations it might be appended in: nothing so far, something
+ * ending in a space, or something ending in anything else.
+ * <p>
+ * Callers must call {@link #invalidate(Element)} on the parent of anything they remove, replace or move
+ * after statistics have been computed. Elements that have never been seen are computed when first asked
+ * about.
+ */
+final class SubtreeStats {
+    static final int P = 0;
+    static final int IMG = 1;
+    static final int LI = 2;
+    static final int INPUT = 3;
+    static final int EMBED = 4;
+    static final int OBJECT = 5;
+    private static final String[] COUNTED_TAGS = {"p", "img", "li", "input", "embed", "object"};
+    private static final int TAG_COUNT = COUNTED_TAGS.length;
+
+    // what the accumulated text looks like when an element or text node is appended to it.
+    private static final int EMPTY = 0;
+    private static final int AFTER_SPACE = 1;
+    private static final int AFTER_OTHER = 2;
+    private static final int STATES = 3;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Map<Element, Integer> indices;
+    private final BitSet dirty;
+    // whether the element's text was computed as preserving whitespace.
+    private final BitSet preserved;
+
+    /*
+     * Summaries of the text an element appends, one slot for each starting state: its length, the number of
+     * leading and trailing characters that String.trim() would remove, the number of commas just before the
+     * trailing trimmable characters, and whether the last character is a space.
+     */
+    private int[] length;
+    private int[] leading;
+    private int[] trailing;
+    private int[] tailCommas;
+    private boolean[] endsWithSpace;
+    private int[] commas;
+    private int[] linkLength;
+    private int[] tagCounts;
+
+    // scratch summary for the text node or piece being appended.
+    private int pieceLength;
+    private int pieceLeading;
+    private int pieceTrailing;
+    private int pieceTailCommas;
+    private int pieceCommas;
+    private boolean pieceEndsWithSpace;
+
+    // scratch summaries for the element being computed, one for each starting state.
+    private final int[] accLength = new int[STATES];
+    private final int[] accLeading = new int[STATES];
+    private final int[] accTrailing = new int[STATES];
+    private final int[] accTailCommas = new int[STATES];
+    private final boolean[] accEndsWithSpace = new boolean[STATES];
+    private final int[] accState = new int[STATES];
+
+    SubtreeStats() {
+        indices = new IdentityHashMap<Element, Integer>();
+        dirty = new BitSet(INITIAL_CAPACITY);
+        preserved = new BitSet(INITIAL_CAPACITY);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        length = new int[capacity * STATES];
+        leading = new int[capacity * STATES];
+        trailing = new int[capacity * STATES];
+        tailCommas = new int[capacity * STATES];
+        endsWithSpace = new boolean[capacity * STATES];
+        commas = new int[capacity];
+        linkLength = new int[capacity];
+        tagCounts = new int[capacity * TAG_COUNT];
+    }
+
+    private void grow() {
+        int capacity = commas.length * 2;
+        length = Arrays.copyOf(length, capacity * STATES);
+        leading = Arrays.copyOf(leading, capacity * STATES);
+        trailing = Arrays.copyOf(trailing, capacity * STATES);
+        tailCommas = Arrays.copyOf(tailCommas, capacity * STATES);
+        endsWithSpace = Arrays.copyOf(endsWithSpace, capacity * STATES);
+        commas = Arrays.copyOf(commas, capacity);
+        linkLength = Arrays.copyOf(linkLength, capacity);
+        tagCounts = Arrays.copyOf(tagCounts, capacity * TAG_COUNT);
+    }
+
+    /**
+     * Forget everything, keeping the storage for the next pass.
+     */
+    void clear() {
+        indices.clear();
+        dirty.clear();
+        preserved.clear();
+    }
+
+    /**
+     * Note that the children of an element have changed. The element and all of its ancestors will be
+     * recomputed the next time they are asked about.
+     */
+    void invalidate(Element e) {
+        if (indices.isEmpty()) {
+            return;
+        }
+        while (e != null) {
+            Integer index = indices.get(e);
+            if (index != null) {
+                dirty.set(index.intValue());
+            }
+            e = e.parent();
+        }
+    }
+
+    /**
+     * @return the same as e.text().length().
+     */
+    int textLength(Element e) {
+        int slot = ensure(e) * STATES + EMPTY;
+        if (leading[slot] == length[slot]) {
+            return 0;
+        }
+        return length[slot] - leading[slot] - trailing[slot];
+    }
+
+    /**
+     * @return the same as e.text().split(",").length.
+     */
+    int commaSegments(Element e) {
+        int index = ensure(e);
+        int slot = index * STATES + EMPTY;
+        if (leading[slot] == length[slot]) {
+            return 1; // "".split(",") is one empty string.
+        }
+        int trimmedLength = length[slot] - leading[slot] - trailing[slot];
+        if (tailCommas[slot] == trimmedLength) {
+            return 0; // nothing but commas; split drops all the empty strings.
+        }
+        // split drops the empty strings after trailing commas.
+        return commas[index] + 1 - tailCommas[slot];
+    }
+
+    /**
+     * @return the sum of the text lengths of the 'a' elements at or under e.
+     */
+    int linkTextLength(Element e) {
+        return linkLength[ensure(e)];
+    }
+
+    /**
+     * @param tag one of the tag constants of this class.
+     * @return the same as e.getElementsByTag(tag).size().
+     */
+    int tagCount(Element e, int tag) {
+        return tagCounts[ensure(e) * TAG_COUNT + tag];
+    }
+
+    private int ensure(Element e) {
+        boolean preserve = preservesWhitespace(e);
+        Integer index = indices.get(e);
+        if (index != null && !dirty.get(index.intValue()) && preserved.get(index.intValue()) == preserve) {
+            return index.intValue();
+        }
+        return compute(e, preserve);
+    }
+
+    /* Element.preserveWhitespace() is package-private, so we do it ourselves. */
+    private static boolean preservesWhitespace(Element e) {
+        while (e != null) {
+            if (e.tag().preserveWhitespace()) {
+                return true;
+            }
+            e = e.parent();
+        }
+        return false;
+    }
+
+    private int compute(Element e, boolean preserve) {
+        /* First make sure every child element is up to date. */
+        for (Node child : e.childNodes()) {
+            if (child instanceof Element) {
+                Element childElement = (Element)child;
+                boolean childPreserve = preserve || childElement.tag().preserveWhitespace();
+                Integer childIndex = indices.get(childElement);
+                if (childIndex == null || dirty.get(childIndex.intValue())
+                    || preserved.get(childIndex.intValue()) != childPreserve) {
+                    compute(childElement, childPreserve);
+                }
+            }
+        }
+
+        Integer existing = indices.get(e);
+        int index;
+        if (existing == null) {
+            index = indices.size();
+            if (index == commas.length) {
+                grow();
+            }
+            indices.put(e, Integer.valueOf(index));
+        } else {
+            index = existing.intValue();
+        }
+
+        for (int state = 0; state < STATES; state++) {
+            accLength[state] = 0;
+            accLeading[state] = 0;
+            accTrailing[state] = 0;
+            accTailCommas[state] = 0;
+            accEndsWithSpace[state] = false;
+            accState[state] = state;
+        }
+        int commaCount = 0;
+        int links = 0;
+        int tagBase = index * TAG_COUNT;
+        for (int tag = 0; tag < TAG_COUNT; tag++) {
+            tagCounts[tagBase + tag] = COUNTED_TAGS[tag].equals(e.tagName()) ? 1 : 0;
+        }
+
+        /* Now walk the children the way Element.text() does. */
+        for (Node child : e.childNodes()) {
+            if (child instanceof TextNode) {
+                TextNode text = (TextNode)child;
+                boolean startsWithSpace = summarizeText(text, preserve);
+                commaCount += pieceCommas;
+                for (int state = 0; state < STATES; state++) {
+                    if (startsWithSpace && accState[state] == AFTER_SPACE) {
+                        appendPieceWithoutLeadingSpace(state);
+                    } else {
+                        appendPiece(state);
+                    }
+                }
+            } else if (child instanceof Element) {
+                Element childElement = (Element)child;
+                int childIndex = indices.get(childElement).intValue();
+                commaCount += commas[childIndex];
+                links += linkLength[childIndex];
+                int childTagBase = childIndex * TAG_COUNT;
+                for (int tag = 0; tag < TAG_COUNT; tag++) {
+                    tagCounts[tagBase + tag] += tagCounts[childTagBase + tag];
+                }
+                boolean block = childElement.isBlock();
+                for (int state = 0; state < STATES; state++) {
+                    if (block && accState[state] == AFTER_OTHER) {
+                        setPieceToSpace();
+                        appendPiece(state);
+                    }
+                    setPieceToElement(childIndex, accState[state]);
+                    appendPiece(state);
+                }
+            }
+        }
+
+        int base = index * STATES;
+        for (int state = 0; state < STATES; state++) {
+            length[base + state] = accLength[state];
+            leading[base + state] = accLeading[state];
+            trailing[base + state] = accTrailing[state];
+            tailCommas[base + state] = accTailCommas[state];
+            endsWithSpace[base + state] = accEndsWithSpace[state];
+        }
+        commas[index] = commaCount;
+        if ("a".equals(e.tagName())) {
+            int slot = base + EMPTY;
+            if (leading[slot] != length[slot]) {
+                links += length[slot] - leading[slot] - trailing[slot];
+            }
+        }
+        linkLength[index] = links;
+        dirty.clear(index);
+        preserved.set(index, preserve);
+        return index;
+    }
+
+    private void setPieceToSpace() {
+        pieceLength = 1;
+        pieceLeading = 1;
+        pieceTrailing = 1;
+        pieceTailCommas = 0;
+        pieceEndsWithSpace = true;
+    }
+
+    private void setPieceToElement(int index, int state) {
+        int slot = index * STATES + state;
+        pieceLength = length[slot];
+        pieceLeading = leading[slot];
+        pieceTrailing = trailing[slot];
+        pieceTailCommas = tailCommas[slot];
+        pieceEndsWithSpace = endsWithSpace[slot];
+    }
+
+    /* Concatenate the current piece onto the summary for one starting state. */
+    private void appendPiece(int state) {
+        if (pieceLength == 0) {
+            return;
+        }
+        int len = accLength[state];
+        if (accLeading[state] == len) {
+            accLeading[state] = len + pieceLeading;
+        }
+        if (pieceTrailing == pieceLength) {
+            // all trimmable; the commas before the trailing run are unchanged.
+            accTrailing[state] += pieceLength;
+        } else {
+            if (pieceTailCommas == pieceLength - pieceTrailing && accTrailing[state] == 0) {
+                accTailCommas[state] += pieceTailCommas;
+            } else {
+                accTailCommas[state] = pieceTailCommas;
+            }
+            accTrailing[state] = pieceTrailing;
+        }
+        accLength[state] = len + pieceLength;
+        accEndsWithSpace[state] = pieceEndsWithSpace;
+        accState[state] = pieceEndsWithSpace ? AFTER_SPACE : AFTER_OTHER;
+    }
+
+    /* The current piece is a text node that starts with a single space that text() will strip. */
+    private void appendPieceWithoutLeadingSpace(int state) {
+        int savedLength = pieceLength;
+        int savedLeading = pieceLeading;
+        int savedTrailing = pieceTrailing;
+        pieceLength--;
+        pieceLeading--;
+        if (savedLeading == savedLength) {
+            pieceTrailing--;
+        }
+        appendPiece(state);
+        pieceLength = savedLength;
+        pieceLeading = savedLeading;
+        pieceTrailing = savedTrailing;
+    }
+
+    /**
+     * Summarize the characters that text() would append for a text node into the piece fields, without
+     * building the string. This follows StringUtil.normaliseWhitespace, including its habit of returning the
+     * original string when there was nothing to normalize and of emitting the low half of a surrogate pair
+     * twice when there was.
+     *
+     * @return true if the text is normalized and starts with a space.
+     */
+    private boolean summarizeText(TextNode textNode, boolean preserve) {
+        String text = textNode.getWholeText();
+        pieceLength = 0;
+        pieceLeading = 0;
+        pieceTrailing = 0;
+        pieceTailCommas = 0;
+        pieceCommas = 0;
+        pieceEndsWithSpace = false;
+        int textLength = text.length();
+        if (preserve || !needsNormalizing(text)) {
+            for (int i = 0; i < textLength; i++) {
+                emit(text.charAt(i));
+            }
+        } else {
+            boolean lastWasWhite = false;
+            for (int i = 0; i < textLength; i++) {
+                int c = text.codePointAt(i);
+                if (Character.isWhitespace(c)) {
+                    if (!lastWasWhite) {
+                        emit(' ');
+                        lastWasWhite = true;
+                    }
+                } else {
+                    if (Character.isSupplementaryCodePoint(c)) {
+                        emit(Character.highSurrogate(c));
+                        emit(Character.lowSurrogate(c));
+                    } else {
+                        emit((char)c);
+                    }
+                    lastWasWhite = false;
+                }
+            }
+        }
+        return !preserve && pieceLength > 0 && Character.isWhitespace(text.codePointAt(0));
+    }
+
+    private static boolean needsNormalizing(String text) {
+        boolean lastWasWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.codePointAt(i);
+            if (Character.isWhitespace(c)) {
+                if (lastWasWhite || c != ' ') {
+                    return true;
+                }
+                lastWasWhite = true;
+            } else {
+                lastWasWhite = false;
+            }
+        }
+        return false;
+    }
+
+    private void emit(char c) {
+        if (c <= ' ') {
+            if (pieceLeading == pieceLength) {
+                pieceLeading++;
+            }
+            pieceTrailing++;
+        } else if (c == ',') {
+            pieceCommas++;
+            if (pieceTrailing == 0) {
+                pieceTailCommas++;
+            } else {
+                pieceTailCommas = 1;
+            }
+            pieceTrailing = 0;
+        } else {
+            pieceTailCommas = 0;
+            pieceTrailing = 0;
+        }
+        pieceLength++;
+        pieceEndsWithSpace = c == ' ';
+    }
+}
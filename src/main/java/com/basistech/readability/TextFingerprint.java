@@ -0,0 +1,107 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+
+import java.io.IOException;
+
+/**
+ * A 64-bit FNV-1a hash and the length of some text, so that two texts can be compared after the first of
+ * them has been let go. As an Appendable it passes whatever it is given on to another one, taking the
+ * fingerprint of the text on the way.
+ */
+final class TextFingerprint implements Appendable {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private final Appendable out;
+    private long hash = OFFSET_BASIS;
+    private long length;
+
+    /**
+     * @param out where to pass the text on to, or null to just take the fingerprint.
+     */
+    TextFingerprint(Appendable out) {
+        this.out = out;
+    }
+
+    static TextFingerprint of(CharSequence text) {
+        TextFingerprint fingerprint = new TextFingerprint(null);
+        fingerprint.update(text, 0, text.length());
+        return fingerprint;
+    }
+
+    int length() {
+        return (int)length;
+    }
+
+    /**
+     * @return true if the text has, as far as a fingerprint can tell, the same content as this.
+     */
+    boolean sameText(CharSequence text) {
+        return equals(of(text));
+    }
+
+    public Appendable append(CharSequence csq) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        return append(text, 0, text.length());
+    }
+
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        update(text, start, end);
+        if (out != null) {
+            out.append(text, start, end);
+        }
+        return this;
+    }
+
+    public Appendable append(char c) throws IOException {
+        update(c);
+        if (out != null) {
+            out.append(c);
+        }
+        return this;
+    }
+
+    private void update(CharSequence text, int start, int end) {
+        for (int index = start; index < end; index++) {
+            update(text.charAt(index));
+        }
+    }
+
+    private void update(char c) {
+        hash = (hash ^ (c & 0xff)) * PRIME;
+        hash = (hash ^ (c >>> 8)) * PRIME;
+        length++;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TextFingerprint)) {
+            return false;
+        }
+        TextFingerprint other = (TextFingerprint)obj;
+        return hash == other.hash && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int)(hash ^ (hash >>> 32));
+    }
+}
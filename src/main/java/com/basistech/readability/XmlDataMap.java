@@ -17,10 +17,9 @@
  */
 package com.basistech.readability;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
@@ -29,8 +28,29 @@ import org.jsoup.nodes.TextNode;
 /**
  * Maintains map between PC-DATA offsets and Text nodes in an XML document. Provides some structure for the
  * process of pulling the data out.
+ * <p>
+ * The PC-DATA is gathered in a buffer, or, with {@link #process(Element, Appendable)}, written out as it is
+ * found; the offsets are then offsets in what was written.
  */
 public abstract class XmlDataMap {
+    /**
+     * The initial size of the pc-data buffer, unless the subclass asks for another.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+    /**
+     * The largest buffer {@link #reset()} keeps for the next document; a bigger one is let go.
+     */
+    public static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String SPACE_PERIOD_SPACE = " . " + LINE_SEPARATOR;
+    private static final String PERIOD_SPACE = ". " + LINE_SEPARATOR;
+    private static final String SPACE = " " + LINE_SEPARATOR;
+    //SK: allow quotes to be considered as EOS punctuation, so that we don't
+    //  add extra punctuation to sentences ending with quotes. This isn't
+    //  entirely unicode-friendly, and we may want to fix that someday.
+    private static final String EOS_PUNCTUATION = "!?.\u2029\"\u0027\u2018\u2019\u201c\u201d";
+
     protected char forceSentenceChar = '\u2029'; // paragraph
 
     /**
@@ -92,58 +112,85 @@ public abstract class XmlDataMap {
         }
     }
 
-    protected StringBuffer pcDataBuffer;
+    protected StringBuilder pcDataBuffer;
     private List<Mark> marks;
-    // CHECKSTYLE:OFF
-    private LinkedList<OffsetRange> offsetRanges;
-    // CHECKSTYLE:ON
+    private OffsetIndex offsetRanges;
     private int pcDataOffset;
+    private boolean trackOffsets = true;
+    // where the pc-data goes while process(Element, Appendable) runs; the buffer otherwise.
+    private Appendable sink;
     private boolean justAppendedSpace;
     private boolean justAppendedPeriod;
 
-    private ListIterator<OffsetRange> optimizedListPointer;
-
-    private OffsetRange optimizedRangeListElement;
-
     protected XmlDataMap() {
-        offsetRanges = new LinkedList<OffsetRange>();
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many characters of pc-data to make room for up front.
+     */
+    protected XmlDataMap(int capacity) {
+        offsetRanges = new OffsetIndex();
         pcDataOffset = 0;
-        pcDataBuffer = new StringBuffer();
+        pcDataBuffer = new StringBuilder(capacity);
         justAppendedSpace = false;
         justAppendedPeriod = false;
         marks = new ArrayList<Mark>();
     }
 
+    /**
+     * Forget the last document, so that this object can process another one. The buffer is kept, unless it
+     * has grown past {@link #MAX_RETAINED_CAPACITY}. The offset ranges and marks of the last document are not
+     * touched; they are replaced with new ones.
+     */
+    public void reset() {
+        if (pcDataBuffer.capacity() > MAX_RETAINED_CAPACITY) {
+            pcDataBuffer = new StringBuilder(DEFAULT_CAPACITY);
+        } else {
+            pcDataBuffer.setLength(0);
+        }
+        offsetRanges = new OffsetIndex();
+        marks = new ArrayList<Mark>();
+        pcDataOffset = 0;
+        justAppendedSpace = false;
+        justAppendedPeriod = false;
+    }
+
+    /**
+     * Find the range that holds an offset. Offsets can be looked up in any order.
+     *
+     * @return a copy of the range.
+     */
     public OffsetRange findOffsetRangeForOffset(int offset) {
-        if (optimizedRangeListElement.offsetInRange(offset)) {
-            return optimizedRangeListElement;
-        } else if (offset > optimizedRangeListElement.getStart()) {
-            while (optimizedRangeListElement.getStart() < offset && optimizedListPointer.hasNext()) {
-                optimizedRangeListElement = optimizedListPointer.next();
-                if (optimizedRangeListElement.offsetInRange(offset)) {
-                    return optimizedRangeListElement;
-                }
+        int index = offsetRanges.indexOf(offset);
+        if (index < 0) {
+            if (offsetRanges.size() == 0 || offset < offsetRanges.getStart(0)) {
+                throw new RuntimeException("Offset " + offset + " before the first offset");
             }
-            throw new RuntimeException("Offset " + offset + " beyond last range");
-        } else {
-            // we don't expect to exercise this case.
-            // has to be smaller, no?
-            while (offset < optimizedRangeListElement.getStart() && optimizedListPointer.hasPrevious()) {
-                optimizedRangeListElement = optimizedListPointer.previous();
-                if (optimizedRangeListElement.offsetInRange(offset)) {
-                    return optimizedRangeListElement;
-                }
+            if (offset >= offsetRanges.getEnd(offsetRanges.size() - 1)) {
+                throw new RuntimeException("Offset " + offset + " beyond last range");
             }
-            throw new RuntimeException("Offset " + offset + " before the first offset");
+            throw new RuntimeException("Offset " + offset + " between ranges");
         }
+        return offsetRanges.getRange(index);
     }
 
     /**
-     * Retrieve the offset ranges for the text nodes of the original tree.
+     * Retrieve the offset ranges for the text nodes of the original tree. The list cannot be changed, and
+     * each range in it is a copy; splitText is the way to change them.
      *
      * @return the ranges.
      */
     public List<OffsetRange> getOffsetRanges() {
+        return offsetRanges.asList();
+    }
+
+    /**
+     * Retrieve the offset ranges for the text nodes of the original tree, indexed by position.
+     *
+     * @return the index, which follows later splits. Use {@link OffsetIndex#readOnlyView()} to hand it on.
+     */
+    public OffsetIndex getOffsetIndex() {
         return offsetRanges;
     }
 
@@ -156,7 +203,7 @@ public abstract class XmlDataMap {
      *
      * @return
      */
-    public StringBuffer getPcDataBuffer() {
+    public StringBuilder getPcDataBuffer() {
         return pcDataBuffer;
     }
 
@@ -172,14 +219,13 @@ public abstract class XmlDataMap {
      */
     public TextNode splitText(int rangePoint, int splitPoint) {
         assert splitPoint > 0;
-        OffsetRange range = offsetRanges.get(rangePoint);
-        assert splitPoint < range.getText().text().length();
-        TextNode newText = new TextNode(range.getText().text().substring(splitPoint), null);
-        range.getText().text(range.getText().text().substring(0, splitPoint));
-        OffsetRange newRange = new OffsetRange(range.getStart() + splitPoint, range.getEnd(), newText);
-        offsetRanges.add(rangePoint + 1, newRange);
-        range.setEnd(splitPoint + range.getStart());
-        assert range.getText().text().length() == range.getEnd() - range.getStart();
+        TextNode text = offsetRanges.getText(rangePoint);
+        String wholeText = text.text();
+        assert splitPoint < wholeText.length();
+        TextNode newText = new TextNode(wholeText.substring(splitPoint), null);
+        text.text(wholeText.substring(0, splitPoint));
+        offsetRanges.split(rangePoint, offsetRanges.getStart(rangePoint) + splitPoint, newText);
+        assert text.text().length() == offsetRanges.getEnd(rangePoint) - offsetRanges.getStart(rangePoint);
         return newText;
     }
 
@@ -191,7 +237,7 @@ public abstract class XmlDataMap {
      */
     protected void append(TextNode textObject, String text) {
         // if an entire Text element is whitespace, chances are that it's <div>NL noise. We don't need it.
-        boolean spaceText = text.matches("[\\s]*");
+        boolean spaceText = isSpace(text);
         if (spaceText && justAppendedSpace) {
             return;
         }
@@ -199,12 +245,34 @@ public abstract class XmlDataMap {
             justAppendedSpace = true;
         }
 
-        OffsetRange offsetRange = new OffsetRange(pcDataOffset, pcDataOffset + text.length(), textObject);
-        pcDataBuffer.append(text);
+        assert textObject == null || textObject.text().length() == text.length();
+        if (trackOffsets) {
+            offsetRanges.add(pcDataOffset, pcDataOffset + text.length(), textObject);
+        }
+        write(text);
         pcDataOffset += text.length();
         justAppendedSpace = Character.isWhitespace(text.charAt(text.length() - 1));
         justAppendedPeriod = eosPunctuation(lastNonWhitepaceCharacter(text));
-        offsetRanges.add(offsetRange);
+    }
+
+    /**
+     * @return true if the text is nothing but characters that \s matches, as text.matches("[\\s]*") would say.
+     */
+    private static boolean isSpace(String text) {
+        for (int index = 0; index < text.length(); index++) {
+            switch (text.charAt(index)) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
     }
 
     protected char lastNonWhitepaceCharacter(String text) {
@@ -217,46 +285,40 @@ public abstract class XmlDataMap {
         return '\ufeff'; // it won't count as punctuation
     }
 
-    //SK: allow quotes to be considered as EOS punctuation, so that we don't 
-    //  add extra punctuation to sentences ending with quotes. This isn't 
-    //  entirely unicode-friendly, and we may want to fix that someday.
     private static boolean eosPunctuation(char c) {
-        String s = "!?.\u2029\"\u0027\u2018\u2019\u201c\u201d"; 
-        return s.indexOf(c) != -1;
+        return EOS_PUNCTUATION.indexOf(c) != -1;
     }
 
     protected void appendPeriod() {
         int startPcDataOffset = pcDataOffset;
         if (!justAppendedSpace && !justAppendedPeriod) {
-            String appendMe = " . " + System.getProperty("line.separator");
-            pcDataBuffer.append(appendMe);
-            pcDataOffset += appendMe.length();
+            write(SPACE_PERIOD_SPACE);
+            pcDataOffset += SPACE_PERIOD_SPACE.length();
             justAppendedPeriod = true;
             justAppendedSpace = true;
         } else if (!justAppendedPeriod) {
-            String appendMe = ". " + System.getProperty("line.separator");
-            pcDataBuffer.append(appendMe);
-            pcDataOffset += appendMe.length();
+            write(PERIOD_SPACE);
+            pcDataOffset += PERIOD_SPACE.length();
             justAppendedPeriod = true;
             justAppendedSpace = true;
         } else if (!justAppendedSpace) {
-            String appendMe = " " + System.getProperty("line.separator");
-            pcDataBuffer.append(appendMe);
-            pcDataOffset += appendMe.length();
+            write(SPACE);
+            pcDataOffset += SPACE.length();
             justAppendedPeriod = true;
             justAppendedSpace = true;
         }
         // we make a range so that the code can tell the difference between 'spurious, added, period'
         // and 'bug that failed to make an offset range.'
-        OffsetRange offsetRange = new OffsetRange(startPcDataOffset, pcDataOffset, null);
-        offsetRanges.add(offsetRange);
+        if (trackOffsets) {
+            offsetRanges.add(startPcDataOffset, pcDataOffset, null);
+        }
 
     }
 
     protected void appendSpace() {
         if (!justAppendedSpace && !justAppendedPeriod) {
             justAppendedSpace = true;
-            pcDataBuffer.append(' ');
+            write(' ');
             pcDataOffset++;
         }
     }
@@ -265,8 +327,52 @@ public abstract class XmlDataMap {
 
     public void process(Element rootElement) {
         recurse(rootElement);
-        optimizedListPointer = offsetRanges.listIterator();
-        optimizedRangeListElement = offsetRanges.getFirst();
+    }
+
+    /**
+     * Write the pc-data out as the tree is walked, instead of gathering it in the buffer. This starts with
+     * {@link #reset()}, so the offset ranges, if tracked, and the marks count from the start of what goes to
+     * out, whatever was processed before.
+     *
+     * @param rootElement where to start.
+     * @param out where the text goes. It is not flushed or closed.
+     * @throws IOException if out does.
+     */
+    public void process(Element rootElement, Appendable out) throws IOException {
+        reset();
+        sink = out;
+        try {
+            recurse(rootElement);
+        } catch (SinkException e) {
+            throw e.getCause();
+        } finally {
+            sink = null;
+        }
+    }
+
+    private void write(String text) {
+        if (sink == null) {
+            pcDataBuffer.append(text);
+            return;
+        }
+        try {
+            sink.append(text);
+        } catch (IOException e) {
+            // carried out through the recursion, and unwrapped in process.
+            throw new SinkException(e);
+        }
+    }
+
+    private void write(char c) {
+        if (sink == null) {
+            pcDataBuffer.append(c);
+            return;
+        }
+        try {
+            sink.append(c);
+        } catch (IOException e) {
+            throw new SinkException(e);
+        }
     }
 
     private void recurse(Element element) {
@@ -304,6 +410,20 @@ public abstract class XmlDataMap {
         return marks;
     }
 
+    /**
+     * @return true (the default) if the offset ranges are recorded.
+     */
+    public boolean isTrackOffsets() {
+        return trackOffsets;
+    }
+
+    /**
+     * @param trackOffsets false to skip recording the offset ranges, for callers that only want the text.
+     */
+    public void setTrackOffsets(boolean trackOffsets) {
+        this.trackOffsets = trackOffsets;
+    }
+
     public char getForceSentenceChar() {
         return forceSentenceChar;
     }
@@ -311,4 +431,17 @@ public abstract class XmlDataMap {
     public void setForceSentenceChar(char forceSentenceChar) {
         this.forceSentenceChar = forceSentenceChar;
     }
+
+    private static final class SinkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SinkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException)super.getCause();
+        }
+    }
 }
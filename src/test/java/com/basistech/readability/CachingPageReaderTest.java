@@ -0,0 +1,211 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingPageReaderTest {
+    private static final String LAST_MODIFIED = "Sat, 01 Jan 2011 00:00:00 GMT";
+
+    private HttpServer server;
+    // path -> body
+    private final Map<String, String> pages = new ConcurrentHashMap<String, String>();
+    // the conditional headers of each request, in order: If-None-Match, then If-Modified-Since.
+    private final List<String[]> requests = new ArrayList<String[]>();
+    private HttpPageReader httpReader;
+    private File directory;
+
+    /*
+     * Serves the pages with an ETag made from the body, and answers a request for an unchanged page with a
+     * 304.
+     */
+    private final class PageHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            String body = pages.get(exchange.getRequestURI().getPath());
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            synchronized (requests) {
+                requests.add(new String[] {ifNoneMatch,
+                    exchange.getRequestHeaders().getFirst("If-Modified-Since")});
+            }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            if (etag.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+
+    @Before
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new PageHandler());
+        server.start();
+        httpReader = new HttpPageReader();
+        directory = File.createTempFile("pages", "");
+        directory.delete();
+    }
+
+    @After
+    public void stop() throws IOException {
+        httpReader.shutdown();
+        server.stop(0);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static String page(String text) {
+        return "<html><head><title>" + text + "</title></head><body><p>" + text + "</p></body></html>";
+    }
+
+    private int requestCount() {
+        synchronized (requests) {
+            return requests.size();
+        }
+    }
+
+    private String[] lastRequest() {
+        synchronized (requests) {
+            return requests.get(requests.size() - 1);
+        }
+    }
+
+    @Test
+    public void missThenRevalidation() throws Exception {
+        pages.put("/a.html", page("first"));
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        assertEquals(page("first"), reader.readPage(url("/a.html")));
+        assertEquals(1, reader.getMisses());
+        assertNull(lastRequest()[0]);
+        assertNull(lastRequest()[1]);
+
+        assertEquals(page("first"), reader.readPage(url("/a.html")));
+        assertEquals(1, reader.getMisses());
+        assertEquals(1, reader.getRevalidations());
+        assertEquals("\"" + Integer.toHexString(page("first").hashCode()) + "\"", lastRequest()[0]);
+        assertEquals(LAST_MODIFIED, lastRequest()[1]);
+    }
+
+    @Test
+    public void revalidationAfterRestartIsServedFromDisk() throws Exception {
+        pages.put("/a.html", page("first"));
+        new CachingPageReader(httpReader, directory, 1024 * 1024).readPage(url("/a.html"));
+
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        assertEquals(page("first"), reader.readPage(url("/a.html")));
+        assertEquals(0, reader.getMisses());
+        assertEquals(1, reader.getRevalidations());
+        assertTrue(lastRequest()[0] != null);
+    }
+
+    @Test
+    public void changedPageReplacesTheStoredOne() throws Exception {
+        pages.put("/a.html", page("first"));
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        reader.readPage(url("/a.html"));
+        pages.put("/a.html", page("second"));
+        assertEquals(page("second"), reader.readPage(url("/a.html")));
+        assertEquals(2, reader.getMisses());
+        assertEquals(0, reader.getRevalidations());
+
+        // what's on disk now is the new page.
+        CachingPageReader restarted = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        assertEquals(page("second"), restarted.readPage(url("/a.html")));
+        assertEquals(1, restarted.getRevalidations());
+    }
+
+    @Test
+    public void freshPagesAreNotRevalidated() throws Exception {
+        pages.put("/a.html", page("first"));
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        reader.setFreshnessLifetime(60 * 1000);
+        reader.readPage(url("/a.html"));
+        int before = requestCount();
+        pages.put("/a.html", page("second"));
+        assertEquals(page("first"), reader.readPage(url("/a.html")));
+        assertEquals(1, reader.getHits());
+        assertEquals(before, requestCount());
+    }
+
+    @Test
+    public void smallLimitEvictsOldPages() throws Exception {
+        StringBuilder filler = new StringBuilder();
+        for (int x = 0; x < 1000; x++) {
+            filler.append("filler ");
+        }
+        for (int x = 0; x < 4; x++) {
+            pages.put("/" + x + ".html", page(x + " " + filler));
+        }
+        // room for about two pages.
+        long maxBytes = 2 * filler.length() + 2000;
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, maxBytes);
+        for (int x = 0; x < 4; x++) {
+            reader.readPage(url("/" + x + ".html"));
+            assertTrue(reader.getStoredBytes() <= maxBytes);
+        }
+        assertEquals(4, reader.getMisses());
+        // the most recent page is still there; the first one is gone.
+        reader.readPage(url("/3.html"));
+        assertEquals(1, reader.getRevalidations());
+        reader.readPage(url("/0.html"));
+        assertEquals(5, reader.getMisses());
+    }
+
+    @Test
+    public void missingPage() throws Exception {
+        CachingPageReader reader = new CachingPageReader(httpReader, directory, 1024 * 1024);
+        assertNull(reader.readPage(url("/nothing.html")));
+        assertEquals(0, reader.getStoredBytes());
+    }
+}
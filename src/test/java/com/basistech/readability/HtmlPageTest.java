@@ -0,0 +1,111 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streaming a document through an HtmlPage that has seen another one has to give the same text and offsets
+ * as a fresh one.
+ */
+public class HtmlPageTest {
+    private static final String FIRST =
+        "<html><body><p>The first page, which is longer.</p><p>Two.</p></body></html>";
+    private static final String SECOND =
+        "<html><body><p>Second <b>page</b>.</p><div>More text</div></body></html>";
+
+    @Test
+    public void streamingAfterProcessing() throws Exception {
+        HtmlPage page = new HtmlPage();
+        page.setTrackOffsets(true);
+        page.process(Jsoup.parse(FIRST));
+        assertTrue(page.getPcData().length() > 0);
+
+        StringBuilder out = new StringBuilder();
+        page.process(Jsoup.parse(SECOND), out);
+        assertNull(page.getPcData());
+        assertRangesCover(page, out.toString());
+
+        HtmlPage fresh = new HtmlPage();
+        fresh.setTrackOffsets(true);
+        StringBuilder freshOut = new StringBuilder();
+        fresh.process(Jsoup.parse(SECOND), freshOut);
+        assertEquals(freshOut.toString(), out.toString());
+        List<OffsetRange> expected = fresh.getOffsetRanges();
+        List<OffsetRange> actual = page.getOffsetRanges();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStart(), actual.get(i).getStart());
+            assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+        }
+        assertEquals(fresh.getMarks().size(), page.getMarks().size());
+    }
+
+    @Test
+    public void streamingTwice() throws Exception {
+        HtmlPage page = new HtmlPage();
+        page.setTrackOffsets(true);
+        page.process(Jsoup.parse(FIRST), new StringBuilder());
+        StringBuilder out = new StringBuilder();
+        page.process(Jsoup.parse(SECOND), out);
+        assertRangesCover(page, out.toString());
+    }
+
+    @Test
+    public void streamingNoBody() throws Exception {
+        HtmlPage page = new HtmlPage();
+        page.process(Jsoup.parse(FIRST));
+        Document noBody = Jsoup.parse(SECOND);
+        noBody.body().remove();
+        page.process(noBody, new StringBuilder());
+        assertNull(page.getPcData());
+        assertEquals(0, page.getOffsetRanges().size());
+    }
+
+    @Test
+    public void processingNoBody() {
+        HtmlPage page = new HtmlPage();
+        page.process(Jsoup.parse(FIRST));
+        assertTrue(page.getPcData().length() > 0);
+        Document noBody = Jsoup.parse(SECOND);
+        noBody.body().remove();
+        page.process(noBody);
+        assertNull(page.getPcData());
+    }
+
+    // every text range has to point at its own text in what was written.
+    private static void assertRangesCover(HtmlPage page, String written) {
+        List<OffsetRange> ranges = page.getOffsetRanges();
+        assertTrue(ranges.size() > 0);
+        assertTrue(ranges.get(0).getStart() < 2);
+        for (OffsetRange range : ranges) {
+            assertTrue(range.getEnd() <= written.length());
+            if (range.getText() != null) {
+                assertEquals(range.getText().text(), written.substring(range.getStart(), range.getEnd()));
+            }
+        }
+    }
+}
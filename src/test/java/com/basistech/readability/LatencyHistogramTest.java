@@ -0,0 +1,54 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void singleSample() {
+        for (long nanos = 0; nanos < 5000; nanos++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            assertEquals(nanos, histogram.percentileNanos(0.5));
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1258291);
+        assertEquals(1258291, histogram.percentileNanos(0.5));
+    }
+
+    /*
+     * A percentile is never below the sample it stands for, and at most 25% above it.
+     */
+    @Test
+    public void percentileBounds() {
+        for (long nanos = 4; nanos < 1L << 30; nanos = nanos * 3 / 2 + 1) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(nanos);
+            histogram.record(Long.MAX_VALUE / 2);
+            long p50 = histogram.percentileNanos(0.5);
+            assertTrue(nanos + " gave " + p50, p50 >= nanos);
+            assertTrue(nanos + " gave " + p50, p50 <= nanos + nanos / 4 + 1);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NekoJsoupParserTest {
+    private static final String PAGE = "<html id=\"comment-page\"><head><title>t</title>"
+        + "<style>p { color: red }</style>"
+        + "<link rel=\"stylesheet\" href=\"site.css\"><link rel=\"alternate\" href=\"feed.xml\">"
+        + "<script>var x = 1;</script>"
+        + "<script src=\"http://example.com/ads.js\"></script>"
+        + "<script src=\"http://example.com/readability.js\"></script>"
+        + "<script src=\"http://use.typekit.com/abc.js\"></script>"
+        + "</head><body class=\"sidebar\">"
+        + "<p>before <font face=\"Arial\" color=\"red\" class=\"x\">in a font</font> after</p>"
+        + "<noscript class=\"ns\" id=\"n\"><p>no script</p></noscript>"
+        + "<div class=\"sidebar\"><p>in the sidebar</p></div>"
+        + "<div id=\"comments\" class=\"main\"><p>main comments</p></div>"
+        + "<div class=\"content\"><p>the content</p></div>"
+        + "</body></html>";
+
+    private static Document parse(boolean prune, boolean stripUnlikely) throws Exception {
+        NekoJsoupParser parser = new NekoJsoupParser();
+        parser.setPruneBoilerplate(prune);
+        parser.setStripUnlikelyCandidates(stripUnlikely);
+        return parser.parse(PAGE, "http://example.com/");
+    }
+
+    @Test
+    public void dropsScriptsStylesAndStylesheets() throws Exception {
+        Document document = parse(true, false);
+        assertEquals(0, document.getElementsByTag("style").size());
+        assertEquals(0, document.select("link[rel=stylesheet]").size());
+        assertEquals(1, document.select("link[rel=alternate]").size());
+        // only readability's own and typekit survive.
+        assertEquals(2, document.getElementsByTag("script").size());
+        assertEquals(1, document.select("script[src*=readability]").size());
+        assertEquals(1, document.select("script[src*=typekit]").size());
+        assertTrue(document.html().indexOf("var x") == -1);
+    }
+
+    @Test
+    public void renamedElementsHaveNoAttributes() throws Exception {
+        Document document = parse(true, false);
+        assertEquals(0, document.getElementsByTag("font").size());
+        assertEquals(0, document.getElementsByTag("noscript").size());
+        Element span = document.select("p > span").first();
+        assertNotNull(span);
+        assertEquals("in a font", span.text());
+        assertEquals(0, span.attributes().size());
+        Element div = document.select("div:has(p:contains(no script))").last();
+        assertNotNull(div);
+        assertEquals(0, div.attributes().size());
+    }
+
+    @Test
+    public void stripsUnlikelyCandidates() throws Exception {
+        Document document = parse(true, true);
+        // never the body or the html, whatever their class and id say.
+        assertNotNull(document.body());
+        assertEquals("sidebar", document.body().className());
+        assertEquals("comment-page", document.child(0).id());
+        assertTrue(document.body().text().indexOf("in the sidebar") == -1);
+        // 'comments' is unlikely, but 'main' says maybe.
+        assertTrue(document.body().text().indexOf("main comments") != -1);
+        assertTrue(document.body().text().indexOf("the content") != -1);
+    }
+
+    @Test
+    public void keepsUnlikelyCandidatesUnlessAsked() throws Exception {
+        Document document = parse(true, false);
+        assertTrue(document.body().text().indexOf("in the sidebar") != -1);
+    }
+
+    @Test
+    public void prunesNothingUnlessAsked() throws Exception {
+        Document document = parse(false, true);
+        assertEquals(1, document.getElementsByTag("style").size());
+        assertEquals(4, document.getElementsByTag("script").size());
+        assertEquals(1, document.getElementsByTag("font").size());
+        assertEquals("red", document.getElementsByTag("font").first().attr("color"));
+        assertTrue(document.body().text().indexOf("in the sidebar") != -1);
+    }
+}
@@ -0,0 +1,71 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioFilePageReaderTest {
+    private File base;
+    private NioFilePageReader reader;
+
+    @Before
+    public void makeBase() throws IOException {
+        base = File.createTempFile("pages", "");
+        base.delete();
+        new File(base, "sub dir").mkdirs();
+        FileUtils.writeStringToFile(new File(base, "page.html"), "<html><body>top</body></html>", "UTF-8");
+        FileUtils.writeStringToFile(new File(base, "sub dir/page.html"), "<html><body>below</body></html>",
+                                    "UTF-8");
+        reader = new NioFilePageReader();
+        reader.setBaseDirectory(base);
+        reader.setCharsetDetector(new LayeredCharsetDetector());
+    }
+
+    @After
+    public void removeBase() throws IOException {
+        FileUtils.deleteDirectory(base);
+    }
+
+    @Test
+    public void resolve() {
+        File page = new File(base, "page.html");
+        assertEquals(page, reader.resolve("page.html"));
+        assertEquals(page, reader.resolve(page.getAbsolutePath()));
+        assertEquals(page.getAbsoluteFile(), reader.resolve(page.toURI().toString()).getAbsoluteFile());
+        // a mirrored crawl keeps the escapes in its file names.
+        assertEquals(new File(base, "sub%20dir/page.html"),
+                     reader.resolve("http://example.com/sub%20dir/page.html"));
+    }
+
+    @Test
+    public void relativeFileUrls() throws Exception {
+        assertEquals(new File(base, "page.html"), reader.resolve("file:page.html"));
+        assertEquals(new File(base, "sub dir/page.html"), reader.resolve("file:sub%20dir/page.html"));
+        assertTrue(reader.readPage("file:page.html").contains("top"));
+        assertTrue(reader.readPage("file:sub%20dir/page.html").contains("below"));
+    }
+}
@@ -0,0 +1,149 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageSeriesTest {
+    private static final String BASE = "http://example.com/story?page=";
+
+    private ExecutorService executor;
+
+    @Before
+    public void startExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /*
+     * A page of the story, with links to the other pages of it.
+     */
+    private static String storyPage(int number, int lastPage) {
+        StringBuilder page = new StringBuilder();
+        page.append("<html><head><title>The story, page ").append(number).append("</title></head><body>");
+        page.append("<div id=\"article\">");
+        for (int x = 0; x < 6; x++) {
+            page.append("<p>This is paragraph ").append(x).append(" of page ").append(number)
+                .append(", which goes on for a while, with commas, so that it scores well, and is long enough")
+                .append(" to be taken for the article on its own, page ").append(number).append(".</p>");
+        }
+        page.append("</div><div class=\"pagination\">");
+        for (int x = 1; x <= lastPage; x++) {
+            if (x != number) {
+                page.append("<a href=\"").append(BASE).append(x).append("\">").append(x).append("</a> ");
+            }
+        }
+        if (number < lastPage) {
+            page.append("<a href=\"").append(BASE).append(number + 1).append("\">next</a>");
+        }
+        page.append("</div></body></html>");
+        return page.toString();
+    }
+
+    /*
+     * Serves the story, and a short 'not found' page with a 200 for any page past the end of it, the way
+     * plenty of sites do.
+     */
+    private static final class SoftNotFoundReader implements PageReader {
+        private final int lastPage;
+
+        SoftNotFoundReader(int lastPage) {
+            this.lastPage = lastPage;
+        }
+
+        public String readPage(String url) throws PageReadException {
+            int number = Integer.parseInt(url.substring(BASE.length()));
+            if (number > lastPage) {
+                return "<html><head><title>Not found</title></head><body><p>Not found.</p></body></html>";
+            }
+            return storyPage(number, lastPage);
+        }
+
+        public void setCharsetDetector(PageCharsetDetector detector) {
+        }
+    }
+
+    @Test
+    public void softNotFoundEndsTheSeries() throws Exception {
+        Readability readability = new Readability();
+        readability.setPageReader(new SoftNotFoundReader(3));
+        readability.setReadAllPages(true);
+        readability.setFetchPageSeries(true);
+        readability.setPrefetchExecutor(executor);
+        readability.processDocument(BASE + 1, storyPage(1, 3));
+
+        List<ArticlePage> pages = readability.getPages();
+        assertEquals(3, pages.size());
+        assertEquals(BASE + 3, pages.get(2).getUrl());
+        String text = readability.getArticleText();
+        assertTrue(text.contains("paragraph 0 of page 3"));
+        assertFalse(text.contains("Not found"));
+    }
+
+    @Test
+    public void linksAreFollowedToTheEndByDefault() throws Exception {
+        Readability readability = new Readability();
+        readability.setPageReader(new SoftNotFoundReader(12));
+        readability.setReadAllPages(true);
+        readability.processDocument(BASE + 1, storyPage(1, 12));
+
+        assertEquals(12, readability.getPages().size());
+        assertTrue(readability.getArticleText().contains("paragraph 0 of page 12"));
+        assertNull(readability.getNextPageLink());
+    }
+
+    @Test
+    public void pageLimit() throws Exception {
+        Readability readability = new Readability();
+        readability.setPageReader(new SoftNotFoundReader(12));
+        readability.setReadAllPages(true);
+        readability.setMaxPages(5);
+        readability.processDocument(BASE + 1, storyPage(1, 12));
+
+        assertEquals(5, readability.getPages().size());
+        assertEquals(BASE + 6, readability.getNextPageLink());
+    }
+
+    @Test
+    public void seriesStopsAtTenPagesWithoutALimit() throws Exception {
+        Readability readability = new Readability();
+        readability.setPageReader(new SoftNotFoundReader(12));
+        readability.setReadAllPages(true);
+        readability.setFetchPageSeries(true);
+        readability.setPrefetchExecutor(executor);
+        readability.processDocument(BASE + 1, storyPage(1, 12));
+
+        assertEquals(Readability.DEFAULT_SERIES_PAGES, readability.getPages().size());
+        assertEquals(BASE + 11, readability.getNextPageLink());
+    }
+}
@@ -0,0 +1,147 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The keyword matcher behind Patterns.classify and classifyWhole has to say what the regexes it replaced
+ * said, for any class or id.
+ */
+public class PatternsTest {
+    /* The regexes as they were before the word lists, verbatim. */
+    private static final String NEGATIVE = "(combx|comment|com-|contact|foot|footer|footnote|masthead|media|meta"
+                                           + "|outbrain|promo|related|scroll|shoutbox|sidebar|sponsor|shopping"
+                                           + "|tags|tool|widget)";
+    private static final String POSITIVE = "(article|body|content|entry|hentry|main|page|pagination|post|text"
+                                           + "|blog|story)";
+    private static final String UNLIKELY_CANDIDATES = "combx|comment|community|disqus|extra|foot|header|menu"
+                                                      + "|remark|rss|shoutbox|sidebar|sponsor|ad-break|agegate"
+                                                      + "|pagination|pager|popup|tweet|twitter";
+    private static final String OK_MAYBE_ITS_A_CANDIDATE = "and|article|body|column|main|shadow";
+    private static final String PAGINATION = "pag(e|ing|inat)";
+
+    private static final Pattern[] ORIGINALS = {
+        ciPattern(NEGATIVE), ciPattern(POSITIVE), ciPattern(UNLIKELY_CANDIDATES),
+        ciPattern(OK_MAYBE_ITS_A_CANDIDATE), ciPattern(PAGINATION)
+    };
+    /* in the order of ORIGINALS */
+    private static final int[] BITS = {
+        Patterns.NEGATIVE_BIT, Patterns.POSITIVE_BIT, Patterns.UNLIKELY_CANDIDATES_BIT,
+        Patterns.OK_MAYBE_ITS_A_CANDIDATE_BIT, Patterns.PAGINATION_BIT
+    };
+
+    /* Class and id strings picked to trip up a keyword matcher. */
+    private static final String[] CORPUS = {
+        "", " ", "-", "sidebar", "Sidebar", "SIDEBAR", "sIdEbAr", "left-sidebar", "sidebar_left", "side bar",
+        "foot", "footer", "footnote", "footfooter", "FootNotes", "comment", "comments", "commentary", "com-",
+        "com", "x-com-y", "combx", "community", "page", "pages", "pager", "paging", "paginat", "pagination",
+        "pag", "pagina", "PAGINATION", "Page-2", "main", "mainContent", "MAIN", "domain", "remain", "and",
+        "band", "Brand", "andy", "hand-held", "column", "columns", "shadow", "body", "bodytext", "article",
+        "articles", "hentry", "entry", "entryway", "content", "contents", "post", "posted", "postscript",
+        "text", "context", "blog", "story", "history", "header", "headers", "subheader", "menu", "menus",
+        "remark", "rss", "rss-feed", "ad-break", "ad break", "adbreak", "agegate", "popup", "tweet",
+        "twitter", "retweeted", "tags", "tagsoup", "tag", "tool", "toolbar", "tools", "widget", "widgets",
+        "media", "multimedia", "meta", "metadata", "meta-data", "outbrain", "promo", "promotion", "related",
+        "unrelated", "scroll", "shoutbox", "sponsor", "sponsored", "shopping", "contact", "contacts",
+        "masthead", "disqus", "disqus_thread", "extra", "extras", "COMBX", "ComBX", "TWITTER", "mainsidebar",
+        "article-comments", "storypage", "commentsidebarfooter", "footerpagination", "sidebarfooter",
+        "pagepagination",
+        /* case folding is for US-ASCII only, as with CASE_INSENSITIVE and no UNICODE_CASE */
+        "\u017fidebar", "\u212aombx", "\u0130ntro", "S\u0130DEBAR", "m\u00e1in", "p\u00e1ge", "\u00dfidebar",
+        "\u0441idebar", "\uff53idebar", "main\u0000", "\u0000main", "side\ud83d\ude00bar", "main\ud83d\ude00",
+        /* punctuation next to the keywords */
+        "_main_", "main-", "-main", "main.content", "#main", "main main", "MainMain", "com--", "com-com-"
+    };
+
+    @Test
+    public void wordListsMakeTheOriginalRegexes() {
+        assertEquals(NEGATIVE, Patterns.NEGATIVE.pattern());
+        assertEquals(POSITIVE, Patterns.POSITIVE.pattern());
+        assertEquals(UNLIKELY_CANDIDATES, Patterns.UNLIKELY_CANDIDATES.pattern());
+        assertEquals(OK_MAYBE_ITS_A_CANDIDATE, Patterns.OK_MAYBE_ITS_A_CANDIDATE.pattern());
+        assertEquals(PAGINATION, Patterns.PAGINATION.pattern());
+    }
+
+    @Test
+    public void corpus() {
+        for (String string : CORPUS) {
+            check(string);
+        }
+    }
+
+    @Test
+    public void randomStrings() {
+        List<String> pieces = new ArrayList<String>();
+        String[] words = (NEGATIVE + "|" + POSITIVE + "|" + UNLIKELY_CANDIDATES + "|" + OK_MAYBE_ITS_A_CANDIDATE
+                          + "|page|paging|paginat").replaceAll("[()]", "").split("\\|");
+        for (String word : words) {
+            pieces.add(word);
+            pieces.add(word.toUpperCase());
+            // the near misses
+            pieces.add(word.substring(0, word.length() - 1));
+            pieces.add(word.substring(1));
+        }
+        String[] others = {"-", "_", " ", "x", "s", "\u00e9", "\u017f", "\u212a", "\u0130", "\ud83d\ude00"};
+        for (String other : others) {
+            pieces.add(other);
+        }
+        Random random = new Random(17);
+        for (int x = 0; x < 20000; x++) {
+            StringBuilder string = new StringBuilder();
+            int count = 1 + random.nextInt(4);
+            for (int p = 0; p < count; p++) {
+                String piece = pieces.get(random.nextInt(pieces.size()));
+                if (random.nextInt(4) == 0) {
+                    // mixed case
+                    int at = random.nextInt(piece.length());
+                    piece = piece.substring(0, at) + piece.substring(at, at + 1).toUpperCase()
+                            + piece.substring(at + 1);
+                }
+                string.append(piece);
+            }
+            check(string.toString());
+        }
+    }
+
+    private static void check(String string) {
+        int found = 0;
+        int whole = 0;
+        for (int x = 0; x < ORIGINALS.length; x++) {
+            if (ORIGINALS[x].matcher(string).find()) {
+                found |= BITS[x];
+            }
+            if (ORIGINALS[x].matcher(string).matches()) {
+                whole |= BITS[x];
+            }
+        }
+        assertEquals("find in '" + string + "'", found, Patterns.classify(string));
+        assertEquals("matches '" + string + "'", whole, Patterns.classifyWhole(string));
+    }
+
+    private static Pattern ciPattern(String patternString) {
+        return Pattern.compile(patternString, Pattern.CASE_INSENSITIVE);
+    }
+}
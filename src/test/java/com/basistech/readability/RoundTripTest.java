@@ -0,0 +1,273 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.Random;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RoundTrip has to leave a tree as html(html()) would, text node for text node.
+ */
+public class RoundTripTest {
+    private static final String[] PAGES = {
+        "<div>one <b>two</b>   three\n\n<i> four </i></div>",
+        "<div>\n  <p>a paragraph</p>\n  <p>and <a href=\"x\">another</a>\n</p> trailing </div>",
+        "<div><p>text<br><br>more text<br /><br />and more</p></div>",
+        "<div><ul><li>one</li>  <li>two <span>2</span></li></ul></div>",
+        "<div><table><tr><td>cell</td>  <td> other\n cell </td></tr></table> after</div>",
+        "<div><pre>  keep\n   this   </pre> but  not this </div>",
+        "<div>a<!-- a comment --> b <unknown>c</unknown>  d</div>",
+        "<div>&lt;escaped&gt; &amp; &nbsp; entities</div>",
+        "<div>  </div>",
+        "<div><span></span><b> </b></div>"
+    };
+
+    @Test
+    public void reflowOfParsedPages() {
+        for (String page : PAGES) {
+            Element reflowed = Jsoup.parse(page).body().child(0);
+            Element expected = Jsoup.parse(page).body().child(0);
+            // the round trip is not idempotent; every time has to match.
+            for (int x = 0; x < 3; x++) {
+                RoundTrip.reflow(reflowed);
+                expected.html(expected.html());
+                assertEquals(page + " after " + (x + 1), describe(expected), describe(reflowed));
+            }
+        }
+    }
+
+    @Test
+    public void copyContentOfParsedPages() {
+        for (String page : PAGES) {
+            Element from = Jsoup.parse(page).body().child(0);
+            Element copy = new Document("").createElement("div");
+            Element expected = new Document("").createElement("div");
+            RoundTrip.copyContent(from, copy);
+            expected.html(from.html());
+            assertEquals(page, describe(expected), describe(copy));
+            // the original is left alone.
+            assertEquals(page, describe(Jsoup.parse(page).body().child(0)), describe(from));
+        }
+    }
+
+    @Test
+    public void reflowKeepsElementsWhenTheParserWould() {
+        String page = "<div><p>one</p>  <table><tr><td>two</td></tr></table></div>";
+        Element div = Jsoup.parse(page).body().child(0);
+        Element p = div.child(0);
+        Element td = div.select("td").first();
+        assertTrue(RoundTrip.reflow(div));
+        assertSame(p, div.child(0));
+        assertSame(td, div.select("td").first());
+    }
+
+    @Test
+    public void reflowSaysWhenNothingChanged() {
+        Element div = Jsoup.parse("<div><p>one</p></div>").body().child(0);
+        String before = describe(div);
+        assertFalse(RoundTrip.reflow(div));
+        assertEquals(before, describe(div));
+        div.html(div.html());
+        assertEquals(before, describe(div));
+    }
+
+    /*
+     * The extraction builds trees the parser never would. Whether a child stays where it is depends on what
+     * the relaxed fragment parser does with that pair of tags; where it doesn't, the real round trip has to
+     * be done, which replaces the elements.
+     */
+    @Test
+    public void fallsBackWhereTheParserWouldRearrange() {
+        String[][] pairs = {
+            {"p", "div"}, {"p", "p"}, {"p", "table"}, {"p", "ul"}, {"a", "a"}, {"b", "div"}, {"h1", "h2"},
+            {"li", "li"}, {"td", "tr"}, {"div", "title"}, {"div", "textarea"}, {"div", "script"},
+            {"div", "style"}, {"div", "body"}
+        };
+        for (String[] pair : pairs) {
+            checkBuilt(pair[0], pair[1], false);
+        }
+        // the relaxed parser takes some that the strict one would not.
+        String[][] kept = {
+            {"div", "p"}, {"div", "div"}, {"p", "span"}, {"span", "b"}, {"span", "p"}, {"ul", "li"},
+            {"tr", "td"}, {"table", "td"}, {"div", "unknown"}
+        };
+        for (String[] pair : kept) {
+            checkBuilt(pair[0], pair[1], true);
+        }
+    }
+
+    private static void checkBuilt(String parentName, String childName, boolean keeps) {
+        Element reflowed = build(parentName, childName);
+        Element expected = build(parentName, childName);
+        Element child = reflowed.child(0).child(0);
+        RoundTrip.reflow(reflowed);
+        expected.html(expected.html());
+        String pair = parentName + " > " + childName;
+        assertEquals(pair, describe(expected), describe(reflowed));
+        assertEquals(pair, keeps, isUnder(child, reflowed));
+    }
+
+    /* Element.equals compares content, so look for the very element. */
+    private static boolean isUnder(Element element, Element root) {
+        for (Element e : root.getAllElements()) {
+            if (e == element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* <div><parent> text <child>text</child> text </parent></div>, put together by hand. */
+    private static Element build(String parentName, String childName) {
+        Document document = Document.createShell("");
+        Element div = document.body().appendElement("div");
+        Element parent = div.appendElement(parentName);
+        parent.appendText(" before ");
+        parent.appendElement(childName).appendText("inside");
+        parent.appendText(" after ");
+        return div;
+    }
+
+    /*
+     * handleDoubleBr used to do html(html()) at the p above each br + br. Each of those replaced everything
+     * under the p with copies, while the brs still to come were the detached originals, and looking up from
+     * those found p elements that were no longer in the document. Replay has to do what that did.
+     */
+    @Test
+    public void replayOfDoubleBrs() {
+        String[] pages = {
+            "<div><p>a<br><br>b<span>c<br><br>d</span></p></div>",
+            "<div>no p<br><br>here<div>nor<br><br>here</div></div>",
+            "<p>one<br><br><b>two<br><br>three<br><br></b>four</p><p>five<br><br>six</p>",
+            "<div><span>a<br><br>b</span><span>c<br><br>d</span></div>"
+        };
+        for (String page : pages) {
+            Document expected = Jsoup.parse(page);
+            Document replayed = Jsoup.parse(page);
+            handleDoubleBrTheOldWay(expected);
+            handleDoubleBr(replayed);
+            assertEquals(page, describe(expected), describe(replayed));
+        }
+        // with p elements inside p elements, which only the extraction makes.
+        for (int seed = 0; seed < 300; seed++) {
+            Document expected = randomDocument(new Random(seed));
+            Document replayed = randomDocument(new Random(seed));
+            handleDoubleBrTheOldWay(expected);
+            handleDoubleBr(replayed);
+            assertEquals("seed " + seed, describe(expected), describe(replayed));
+        }
+    }
+
+    private static void handleDoubleBrTheOldWay(Document document) {
+        for (Element br : document.select("br + br")) {
+            Element parent = null;
+            for (Element aparent : br.parents()) {
+                if (aparent.tag().getName().equals("p")) {
+                    parent = aparent;
+                    break;
+                }
+            }
+            if (parent == null) {
+                parent = br.parent();
+                parent.wrap("<p></p>");
+            }
+            parent.html(parent.html());
+        }
+    }
+
+    /* as Readability does it */
+    private static void handleDoubleBr(Document document) {
+        Elements doubleBrs = document.select("br + br");
+        RoundTrip.Replay replay = new RoundTrip.Replay();
+        for (Element br : doubleBrs) {
+            Element parent = replay.paragraphAbove(br);
+            if (parent == null) {
+                parent = br.parent();
+                parent.wrap("<p></p>");
+                replay.changed();
+            }
+            replay.reflow(parent);
+        }
+    }
+
+    private static Document randomDocument(Random random) {
+        Document document = Document.createShell("");
+        fill(document.body(), random, 0);
+        return document;
+    }
+
+    private static void fill(Element element, Random random, int depth) {
+        String[] tags = {"p", "div", "span", "b"};
+        int count = 1 + random.nextInt(5);
+        for (int x = 0; x < count; x++) {
+            int kind = random.nextInt(depth < 4 ? 4 : 2);
+            if (kind == 0) {
+                element.appendText(random.nextBoolean() ? " some text " : "text\n");
+            } else if (kind == 1) {
+                element.appendElement("br");
+                element.appendElement("br");
+            } else {
+                fill(element.appendElement(tags[random.nextInt(tags.length)]), random, depth + 1);
+            }
+        }
+    }
+
+    /* Everything the round trip can change: the nodes, and the exact text of each text node. */
+    private static String describe(Node node) {
+        StringBuilder description = new StringBuilder();
+        describe(node, description);
+        return description.toString();
+    }
+
+    private static void describe(Node node, StringBuilder description) {
+        if (node instanceof TextNode) {
+            description.append("[").append(((TextNode)node).getWholeText()).append("]");
+        } else if (node instanceof Comment) {
+            description.append("<!--").append(((Comment)node).getData()).append("-->");
+        } else if (node instanceof Element) {
+            Element element = (Element)node;
+            description.append("<").append(element.tagName());
+            for (Attribute attribute : element.attributes()) {
+                description.append(" ").append(attribute.getKey()).append("=").append(attribute.getValue());
+            }
+            description.append(">");
+            for (Node child : element.childNodes()) {
+                describe(child, description);
+            }
+            description.append("</").append(element.tagName()).append(">");
+        } else {
+            for (Node child : node.childNodes()) {
+                describe(child, description);
+            }
+        }
+    }
+}
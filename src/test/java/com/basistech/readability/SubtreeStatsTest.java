@@ -0,0 +1,159 @@
+/******************************************************************************
+ * Copyright (c) 2010 Basis Technology Corp.
+ * 
+ * Basis Technology Corp. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.basistech.readability;
+
+import java.util.List;
+import java.util.Random;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SubtreeStats has to agree with what jsoup's text() and getElementsByTag say, for every element, before
+ * and after the tree changes.
+ */
+public class SubtreeStatsTest {
+    private static final String[] TAGS = {"p", "img", "li", "input", "embed", "object"};
+    private static final int[] TAG_CONSTANTS = {
+        SubtreeStats.P, SubtreeStats.IMG, SubtreeStats.LI, SubtreeStats.INPUT, SubtreeStats.EMBED,
+        SubtreeStats.OBJECT
+    };
+
+    private static final String[] PAGES = {
+        "<div>  lots   of\n\n white\tspace  </div>",
+        "<div>a&nbsp;b &nbsp; c&nbsp;</div>",
+        "<div><p>one</p><p> two </p>three<div>four</div> <span>five</span></div>",
+        "<div>x<b>y<i> z </i></b> <a href=\"a\">link <b>text</b></a>, and <a>more</a></div>",
+        "<div>one<br>two<br><br> three <br/></div>",
+        "<div>, , commas,,, at the end,,,</div>",
+        "<div>,,,</div>",
+        "<div><p>,</p><p>,</p></div>",
+        "<div><pre>  kept\n  as   is </pre> and <span>  not  </span></div>",
+        "<div><ul><li>a</li><li>b, <img src=x></li></ul><object><embed></object><input></div>",
+        "<div><a href=x><a href=y>nested</a> links</a></div>",
+        "<div>\ud83d\ude00  \ud83d\ude00 surrogates\n\ud83d\ude00</div>",
+        "<div></div>",
+        "<div> </div>"
+    };
+
+    @Test
+    public void parsedPages() {
+        for (String page : PAGES) {
+            Element body = Jsoup.parse(page).body();
+            check(new SubtreeStats(), body);
+        }
+    }
+
+    @Test
+    public void emptyTextNodes() {
+        Document document = Document.createShell("");
+        Element div = document.body().appendElement("div");
+        div.appendChild(new TextNode("", ""));
+        div.appendElement("p").appendChild(new TextNode("", ""));
+        div.appendChild(new TextNode(" ", ""));
+        div.appendChild(new TextNode("", ""));
+        div.appendChild(new TextNode(" word ", ""));
+        div.appendChild(new TextNode("", ""));
+        div.appendElement("span").appendChild(new TextNode(" , ", ""));
+        check(new SubtreeStats(), document.body());
+    }
+
+    @Test
+    public void randomTrees() {
+        for (int seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            Document document = Document.createShell("");
+            fill(document.body(), random, 0);
+            SubtreeStats stats = new SubtreeStats();
+            check(stats, document.body());
+            // the changes the cleaning makes, each followed by the invalidation it does.
+            for (int change = 0; change < 10; change++) {
+                List<Element> elements = document.body().getAllElements();
+                if (elements.size() < 2) {
+                    break;
+                }
+                Element e = elements.get(1 + random.nextInt(elements.size() - 1));
+                if (random.nextBoolean()) {
+                    stats.invalidate(e.parent());
+                    e.remove();
+                } else {
+                    // moved somewhere else, maybe into a pre.
+                    Element target = elements.get(random.nextInt(elements.size()));
+                    if (isUnder(target, e)) {
+                        continue;
+                    }
+                    stats.invalidate(e.parent());
+                    e.remove();
+                    target.appendChild(e);
+                    stats.invalidate(target);
+                }
+                check(stats, document.body());
+            }
+            // and reused for another pass.
+            stats.clear();
+            check(stats, document.body());
+        }
+    }
+
+    private static boolean isUnder(Element element, Element root) {
+        for (Element e = element; e != null; e = e.parent()) {
+            if (e == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void fill(Element element, Random random, int depth) {
+        String[] tags = {"div", "p", "span", "a", "b", "li", "pre", "img", "br", "input", "object", "embed"};
+        String[] texts = {"", " ", "  ", "\n\t", " ", "   ", "word", " word ", "a, b", ",", ", ",
+            " ,", ",,", "  two  spaces ", "\ud83d\ude00 \n", "end."};
+        int count = random.nextInt(5);
+        for (int x = 0; x < count; x++) {
+            if (random.nextInt(3) == 0 || depth > 4) {
+                element.appendChild(new TextNode(texts[random.nextInt(texts.length)], ""));
+            } else {
+                Element child = element.appendElement(tags[random.nextInt(tags.length)]);
+                fill(child, random, depth + 1);
+            }
+        }
+    }
+
+    private static void check(SubtreeStats stats, Element root) {
+        for (Element e : root.getAllElements()) {
+            String text = e.text();
+            String where = e.outerHtml();
+            assertEquals("text length of " + where, text.length(), stats.textLength(e));
+            assertEquals("comma segments of " + where, text.split(",").length, stats.commaSegments(e));
+            int links = 0;
+            for (Element link : e.getElementsByTag("a")) {
+                links += link.text().length();
+            }
+            assertEquals("link text length of " + where, links, stats.linkTextLength(e));
+            for (int tag = 0; tag < TAGS.length; tag++) {
+                assertEquals(TAGS[tag] + " count of " + where, e.getElementsByTag(TAGS[tag]).size(),
+                             stats.tagCount(e, TAG_CONSTANTS[tag]));
+            }
+        }
+    }
+}